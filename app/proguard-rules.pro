@@ -4,6 +4,8 @@
 # Gson: keep TypeToken subclasses (used in Radios.java for JSON parsing)
 -keep class com.google.gson.reflect.TypeToken { *; }
 -keep class * extends com.google.gson.reflect.TypeToken
+# Gson: keep persisted renderer entries (DeviceSnapshot.java)
+-keep class com.watea.radio_upnp.service.DeviceSnapshot$Entry { *; }
 
 # Missing classes flagged by R8
 -dontwarn com.google.re2j.Matcher
@@ -23,6 +23,7 @@
 
 package com.watea.radio_upnp.activity;
 
+import android.graphics.Bitmap;
 import android.os.Bundle;
 import android.util.Log;
 import android.view.MenuItem;
@@ -42,6 +43,9 @@ public class ItemModifyFragment extends ItemFragment {
   private static final String LOG_TAG = ItemModifyFragment.class.getSimpleName();
   @Nullable
   private Radio radio = null;
+  // Icon as displayed from radio; may be a placeholder while decoding
+  @Nullable
+  private Bitmap radioIcon = null;
 
   // Must be called before creation
   public void set(@NonNull Radio radio) {
@@ -105,8 +109,12 @@ public class ItemModifyFragment extends ItemFragment {
         assert urlWatcher.url != null;
         radio.setURL(urlWatcher.url);
         radio.setWebPageURL(webPageWatcher.url);
-        assert getIcon() != null;
-        radio.setIcon(getIcon());
+        final Bitmap icon = getIcon();
+        assert icon != null;
+        // Only if actually changed by user
+        if (icon != radioIcon) {
+          radio.setIcon(icon);
+        }
         if (!Radios.getInstance().modify(radio)) {
           tell(R.string.radio_database_update_failed);
         }
@@ -126,6 +134,7 @@ public class ItemModifyFragment extends ItemFragment {
         webPageEditText.setText(webPageURL.toString());
       }
       setRadioIcon(radio.getIcon());
+      radioIcon = getIcon();
     }
   }
 }
\ No newline at end of file
@@ -51,6 +51,7 @@ import androidx.media3.common.PlaybackException;
 import androidx.media3.common.Player;
 import androidx.media3.session.MediaController;
 import androidx.media3.session.SessionCommand;
+import androidx.media3.session.SessionResult;
 import androidx.media3.session.SessionToken;
 
 import com.google.common.util.concurrent.ListenableFuture;
@@ -58,8 +59,8 @@ import com.watea.radio_upnp.R;
 import com.watea.radio_upnp.adapter.RadiosMainAdapter;
 import com.watea.radio_upnp.model.Radio;
 import com.watea.radio_upnp.model.Radios;
-import com.watea.radio_upnp.service.RadioPlayer;
 import com.watea.radio_upnp.service.RadioService;
+import com.watea.radio_upnp.service.TrackHistory;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -118,6 +119,13 @@ public class PlayerController
       }
     }
 
+    @Override
+    public void onIconChange(@NonNull Radio radio) {
+      if (radio == getCurrentRadio()) {
+        albumArtImageView.setImageBitmap(radio.getIcon());
+      }
+    }
+
     @Override
     public void onInitEnd() {
       handleInit();
@@ -143,7 +151,7 @@ public class PlayerController
       playlistAlertDialogBuilder.getContext(),
       playInformations,
       R.layout.row_playlist,
-      new String[]{RadioPlayer.DATE, RadioPlayer.INFORMATION},
+      new String[]{TrackHistory.DATE, TrackHistory.INFORMATION},
       new int[]{R.id.row_playlist_date_text_view, R.id.row_playlist_information_text_view});
     playlistAlertDialog = playlistAlertDialogBuilder
       .setAdapter(playlistAdapter, null)
@@ -151,7 +159,7 @@ public class PlayerController
     playlistAlertDialog.getListView().setOnItemLongClickListener((parent, itemView, position, id) -> {
       // Concatenate all entries from the playlist
       copyToClipBoard(playInformations.stream()
-        .map(item -> item.get(RadioPlayer.INFORMATION))
+        .map(item -> item.get(TrackHistory.INFORMATION))
         .collect(Collectors.joining("\n\n")));
       // Dismiss the dialog after handling the long press
       playlistAlertDialog.dismiss();
@@ -160,7 +168,7 @@ public class PlayerController
     });
     playlistAlertDialog.getListView().setOnItemClickListener((parent, rowView, position, id) -> {
       // Get the selected item from the playlist
-      final String selectedInformation = playInformations.get(position).get(RadioPlayer.INFORMATION);
+      final String selectedInformation = playInformations.get(position).get(TrackHistory.INFORMATION);
       assert selectedInformation != null;
       copyToClipBoard(selectedInformation);
       // Dismiss the dialog after handling the click
@@ -172,20 +180,23 @@ public class PlayerController
       if (mediaController == null) { // Should not happen
         mainActivity.tell(R.string.radio_connection_waiting);
       } else {
-        playInformations.clear();
-        final MediaMetadata metadata = mediaController.getMediaMetadata();
-        if (metadata.extras != null) {
-          final String playInformation = metadata.extras.getString(RadioPlayer.PLAYLIST);
-          if (playInformation != null) {
-            playInformations.addAll(RadioPlayer.getPlaylist(playInformation));
+        // Full history, asked for only here
+        final ListenableFuture<SessionResult> playlistFuture = mediaController.sendCustomCommand(
+          new SessionCommand(RadioService.ACTION_PLAYLIST_GET, Bundle.EMPTY), Bundle.EMPTY);
+        playlistFuture.addListener(() -> {
+          playInformations.clear();
+          try {
+            playInformations.addAll(TrackHistory.getEntries(playlistFuture.get().extras));
+          } catch (ExecutionException | InterruptedException exception) {
+            Log.e(LOG_TAG, "Playlist request failed", exception);
           }
-        }
-        if (playInformations.isEmpty()) {
-          mainActivity.tell(R.string.radio_no_playlist);
-        } else {
-          playlistAlertDialog.show();
-          informationSelectPressUserHint.show();
-        }
+          if (playInformations.isEmpty()) {
+            mainActivity.tell(R.string.radio_no_playlist);
+          } else {
+            playlistAlertDialog.show();
+            informationSelectPressUserHint.show();
+          }
+        }, HANDLER::post);
       }
     });
     playedRadioLinearLayout = view.findViewById(R.id.played_radio_linear_layout);
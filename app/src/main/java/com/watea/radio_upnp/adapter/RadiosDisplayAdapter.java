@@ -23,6 +23,7 @@
 
 package com.watea.radio_upnp.adapter;
 
+import android.annotation.SuppressLint;
 import android.view.View;
 
 import androidx.annotation.NonNull;
@@ -48,6 +49,11 @@ public abstract class RadiosDisplayAdapter<V extends RadiosDisplayAdapter<?>.Vie
       }
     }
 
+    @Override
+    public void onIconChange(@NonNull Radio radio) {
+      onChange(radio);
+    }
+
     @Override
     public void onAdd(@NonNull Radio radio) {
       final int index = indexOf(radio);
@@ -57,26 +63,44 @@ public abstract class RadiosDisplayAdapter<V extends RadiosDisplayAdapter<?>.Vie
       }
     }
 
+    @SuppressLint("NotifyDataSetChanged")
     @Override
     public void onRemove(int index) {
       onCountChange();
-      notifyItemRemoved(index);
+      // index is relative to all radios
+      if (isAllRadios()) {
+        notifyItemRemoved(index);
+      } else {
+        notifyDataSetChanged();
+      }
     }
 
+    @SuppressLint("NotifyDataSetChanged")
     @Override
     public void onMove(int from, int to) {
-      notifyItemMoved(from, to);
+      if (isAllRadios()) {
+        notifyItemMoved(from, to);
+      } else {
+        notifyDataSetChanged();
+      }
     }
 
+    @SuppressLint("NotifyDataSetChanged")
     @Override
     public void onAddAll(@NonNull Collection<? extends Radio> c) {
-      c.forEach(this::onAdd);
+      // Batch: one refresh for all
+      onCountChange();
+      notifyDataSetChanged();
     }
 
     @Override
     public void onPreferredChange() {
       RadiosDisplayAdapter.this.onPreferredChange();
     }
+
+    private boolean isAllRadios() {
+      return (getRadios() == Radios.getInstance());
+    }
   };
 
   protected RadiosDisplayAdapter(
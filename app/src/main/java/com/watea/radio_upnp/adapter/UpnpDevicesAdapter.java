@@ -26,6 +26,7 @@ package com.watea.radio_upnp.adapter;
 import android.annotation.SuppressLint;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.graphics.Typeface;
 import android.graphics.drawable.BitmapDrawable;
 import android.os.Handler;
 import android.os.Looper;
@@ -116,6 +117,11 @@ public class UpnpDevicesAdapter
     notifyChange(device);
   }
 
+  @Override
+  public void onGroupedDeviceChange(@NonNull Device device) {
+    notifyChange(device);
+  }
+
   @SuppressLint("NotifyDataSetChanged")
   private void resetRemoteDevices() {
     devices.clear();
@@ -135,7 +141,6 @@ public class UpnpDevicesAdapter
   }
 
   public class ViewHolder extends RecyclerView.ViewHolder {
-    private static final int ICON_SIZE = 100;
     @NonNull
     private final Bitmap castIcon;
     @NonNull
@@ -152,21 +157,41 @@ public class UpnpDevicesAdapter
         assert upnpService != null;
         upnpService.setSelectedDeviceIdentity(isSelected() ? null : device.getUUID());
       });
+      // Multi-room: other devices join or leave the selected one
+      textView.setOnLongClickListener(v -> {
+        assert device != null;
+        assert upnpService != null;
+        final String uUID = device.getUUID();
+        if ((uUID == null) || isSelected()) {
+          return false;
+        }
+        upnpService.setGroupedDeviceIdentity(uUID, !upnpService.isGrouped(device));
+        return true;
+      });
       defaultColor = textView.getCurrentTextColor();
-      castIcon = BitmapFactory.decodeResource(textView.getResources(), R.drawable.ic_cast_warm);
+      // Scaled once; device icons are already scaled
+      castIcon = Bitmap.createScaledBitmap(
+        BitmapFactory.decodeResource(textView.getResources(), R.drawable.ic_cast_warm),
+        Device.ICON_SIZE,
+        Device.ICON_SIZE,
+        true);
     }
 
     private void setView(@NonNull Device device) {
       this.device = device;
       textView.setText(device.getDisplayString());
       // Icon
-      Bitmap bitmap = device.getIcon();
-      bitmap = (bitmap == null) ? castIcon : bitmap;
-      bitmap = Bitmap.createScaledBitmap(bitmap, ICON_SIZE, ICON_SIZE, true);
+      final Bitmap icon = device.getIcon();
+      final Bitmap bitmap = (icon == null) ? castIcon : icon;
       textView.setCompoundDrawablesRelativeWithIntrinsicBounds(
         new BitmapDrawable(textView.getResources(), bitmap), null, null, null);
-      // Selected item
+      // Selected and grouped items
       textView.setTextColor(isSelected() ? selectedColor : defaultColor);
+      textView.setTypeface(null, isGrouped() ? Typeface.ITALIC : Typeface.NORMAL);
+    }
+
+    private boolean isGrouped() {
+      return (upnpService != null) && (device != null) && upnpService.isGrouped(device);
     }
 
     private boolean isSelected() {
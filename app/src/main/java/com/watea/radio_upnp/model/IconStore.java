@@ -0,0 +1,250 @@
+/*
+ * Copyright (c) 2026. Stephane Treuchot
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to
+ * do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.watea.radio_upnp.model;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.LruCache;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+// Radio icons as PNG files, content-addressed: identical icons are stored once.
+// Decoded icons are held by a memory-bounded LRU cache.
+// Decoding runs on a background pool, writing on caller thread.
+class IconStore {
+  private static final String LOG_TAG = IconStore.class.getSimpleName();
+  private static final String EXTENSION = ".png";
+  private static final String TEMP_EXTENSION = ".tmp";
+  private static final String HASH_ALGORITHM = "SHA-1";
+  private static final Pattern KEY = Pattern.compile("[0-9a-f]{40}");
+  private static final int DECODER_COUNT = 2;
+  // Part of the app memory class given to the cache
+  private static final int CACHE_MEMORY_DIVIDER = 8;
+  private static final Handler HANDLER = new Handler(Looper.getMainLooper());
+  @NonNull
+  private final ExecutorService decoder = Executors.newFixedThreadPool(DECODER_COUNT);
+  // UI thread only
+  @NonNull
+  private final Set<Radio> decodingRadios = new HashSet<>();
+  @NonNull
+  private final LruCache<String, Bitmap> cache;
+  @NonNull
+  private final File directory;
+  @NonNull
+  private final Consumer<Radio> onDecoded;
+  // Keys written outside writer thread, count of holders; kept by retain()
+  @NonNull
+  private final Map<String, Integer> pins = new ConcurrentHashMap<>();
+
+  // memoryClass: in MB, as given by ActivityManager.
+  // onDecoded is called on UI thread.
+  IconStore(@NonNull File directory, int memoryClass, @NonNull Consumer<Radio> onDecoded) {
+    this.directory = directory;
+    this.onDecoded = onDecoded;
+    cache = new LruCache<String, Bitmap>(memoryClass * 1024 * 1024 / CACHE_MEMORY_DIVIDER) {
+      @Override
+      protected int sizeOf(@NonNull String key, @NonNull Bitmap bitmap) {
+        return bitmap.getByteCount();
+      }
+    };
+    Log.d(LOG_TAG, "Cache size: " + cache.maxSize());
+  }
+
+  @NonNull
+  private static String hash(@NonNull byte[] bytes) throws NoSuchAlgorithmException {
+    final StringBuilder result = new StringBuilder();
+    for (final byte b : MessageDigest.getInstance(HASH_ALGORITHM).digest(bytes)) {
+      result.append(String.format("%02x", b));
+    }
+    return result.toString();
+  }
+
+  // Any thread; null if key is not a stored icon key.
+  // File may not exist.
+  @Nullable
+  static File getFile(@NonNull File directory, @NonNull String key) {
+    return KEY.matcher(key).matches() ? new File(directory, key + EXTENSION) : null;
+  }
+
+  // Any thread
+  @Nullable
+  byte[] read(@NonNull String key) {
+    try {
+      return Files.readAllBytes(getFile(key).toPath());
+    } catch (IOException iOException) {
+      Log.d(LOG_TAG, "read: no icon for " + key);
+      return null;
+    }
+  }
+
+  // Any thread; from cache only
+  @Nullable
+  Bitmap get(@NonNull String key) {
+    return cache.get(key);
+  }
+
+  // Any thread; decodes synchronously if needed
+  @Nullable
+  Bitmap getNow(@NonNull String key) {
+    Bitmap result = cache.get(key);
+    if (result == null) {
+      final byte[] bytes = read(key);
+      result = (bytes == null) ? null : BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
+      if (result != null) {
+        cache.put(key, result);
+      }
+    }
+    return result;
+  }
+
+  // Must be called from UI thread
+  void decode(@NonNull Radio radio, @NonNull String key) {
+    if (decodingRadios.add(radio)) {
+      decoder.execute(() -> {
+        final Bitmap bitmap = getNow(key);
+        HANDLER.post(() -> {
+          decodingRadios.remove(radio);
+          if (bitmap == null) {
+            // Failure: placeholder is kept for good
+            cache.put(key, Radio.DUMMY_RADIO.getIcon());
+          }
+          onDecoded.accept(radio);
+        });
+      });
+    }
+  }
+
+  // Atomic; nothing written if already there.
+  // Returns key, null if failed.
+  // Intended to be called in writer thread.
+  @Nullable
+  String write(@NonNull Bitmap bitmap) {
+    return write(bitmap, false);
+  }
+
+  // As write(), but icon is kept by retain() until unpinned.
+  // Any thread.
+  @Nullable
+  String writePinned(@NonNull Bitmap bitmap) {
+    return write(bitmap, true);
+  }
+
+  // Any thread
+  void unpin(@NonNull String key) {
+    pins.computeIfPresent(key, (pinnedKey, count) -> (count > 1) ? count - 1 : null);
+  }
+
+  @Nullable
+  private String write(@NonNull Bitmap bitmap, boolean isPinned) {
+    if (!directory.exists() && !directory.mkdirs()) {
+      Log.e(LOG_TAG, "write: unable to create store");
+      return null;
+    }
+    final ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+    bitmap.compress(Bitmap.CompressFormat.PNG, 100, byteArrayOutputStream);
+    final byte[] bytes = byteArrayOutputStream.toByteArray();
+    final String key;
+    try {
+      key = hash(bytes);
+    } catch (NoSuchAlgorithmException noSuchAlgorithmException) {
+      Log.e(LOG_TAG, "write: internal failure", noSuchAlgorithmException);
+      return null;
+    }
+    // Pinned before file exists, as retain() may run meanwhile
+    if (isPinned) {
+      pins.merge(key, 1, Integer::sum);
+    }
+    if (!store(key, bytes)) {
+      if (isPinned) {
+        unpin(key);
+      }
+      return null;
+    }
+    cache.put(key, bitmap);
+    return key;
+  }
+
+  private boolean store(@NonNull String key, @NonNull byte[] bytes) {
+    final File file = getFile(key);
+    if (!file.exists()) {
+      final File tempFile = new File(directory, key + TEMP_EXTENSION);
+      try (final FileOutputStream fileOutputStream = new FileOutputStream(tempFile)) {
+        fileOutputStream.write(bytes);
+      } catch (IOException iOException) {
+        Log.e(LOG_TAG, "write: internal failure", iOException);
+        return false;
+      }
+      if (!tempFile.renameTo(file)) {
+        Log.e(LOG_TAG, "write: unable to rename icon");
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // Removes icons not in keys, unless pinned; intended to be called in writer thread
+  void retain(@NonNull Set<String> keys) {
+    final File[] files = directory.listFiles();
+    if (files != null) {
+      for (final File file : files) {
+        final String name = file.getName();
+        final int dot = name.lastIndexOf('.');
+        final String key = (dot < 0) ? name : name.substring(0, dot);
+        if (pins.containsKey(key)) {
+          continue;
+        }
+        if (!name.endsWith(EXTENSION) || !keys.contains(key)) {
+          if (!file.delete()) {
+            Log.w(LOG_TAG, "retain: unable to delete " + name);
+          }
+        }
+      }
+    }
+  }
+
+  @NonNull
+  private File getFile(@NonNull String key) {
+    return new File(directory, key + EXTENSION);
+  }
+}
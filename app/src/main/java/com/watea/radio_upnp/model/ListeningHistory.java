@@ -0,0 +1,519 @@
+/*
+ * Copyright (c) 2026. Stephane Treuchot
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to
+ * do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.watea.radio_upnp.model;
+
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+// Listening history: what was played, on which radio, when.
+// Append-only binary log. Radio IDs and titles are written once, events refer to them
+// by number; so the log is small and fully held in memory as indexes by day and radio.
+// Events are written in batches; log, indexes and queries live on a single worker thread.
+// All public methods must be called from UI thread; callbacks are called on UI thread.
+public class ListeningHistory {
+  // Query arguments: RADIO_ID and DATE for getAt, DATE for getDay, QUERY for search
+  public static final String RADIO_ID = "radio_id";
+  public static final String DATE = "date";
+  public static final String QUERY = "query";
+  private static final String RADIO_IDS = "radio_ids";
+  private static final String TITLES = "titles";
+  private static final String DATES = "dates";
+  private static final String LOG_TAG = ListeningHistory.class.getSimpleName();
+  private static final String FILE = ListeningHistory.class.getSimpleName();
+  private static final int MAGIC = 0x52484c31; // "RHL1"
+  private static final byte RECORD_RADIO = 1;
+  private static final byte RECORD_TITLE = 2;
+  private static final byte RECORD_EVENT = 3;
+  private static final int END = -1; // Title of event closing listening of a radio
+  private static final int FLUSH_DELAY_MS = 5000;
+  private static final long DAY_MS = 24L * 60 * 60 * 1000;
+  private static final Handler HANDLER = new Handler(Looper.getMainLooper());
+  @NonNull
+  private final ExecutorService worker = Executors.newSingleThreadExecutor();
+  @NonNull
+  private final File file;
+  @NonNull
+  private final Runnable flush = this::flush;
+  // UI thread only
+  @NonNull
+  private List<Event> pendingEvents = new ArrayList<>();
+  // Worker thread only, from here
+  private final List<String> radioIds = new ArrayList<>();
+  private final Map<String, Integer> radioNumbers = new HashMap<>();
+  private final List<String> titles = new ArrayList<>();
+  private final Map<String, Integer> titleNumbers = new HashMap<>();
+  // Events, in time order
+  private final Events events = new Events();
+  private final TreeMap<Long, Integer> dayStarts = new TreeMap<>(); // Day -> first event
+  private final Map<Integer, Ints> radioEvents = new HashMap<>(); // Radio -> its events
+  @Nullable
+  private DataOutputStream dataOutputStream = null;
+  // Log of unknown (e.g. newer) format is left alone: history is then not recorded
+  private boolean isUnknownFormat = false;
+
+  public ListeningHistory(@NonNull File directory) {
+    file = new File(directory, FILE);
+    worker.execute(this::load);
+  }
+
+  // Local day
+  private static long toDay(long date) {
+    return Math.floorDiv(date + TimeZone.getDefault().getOffset(date), DAY_MS);
+  }
+
+  // As written by DataOutput.writeUTF
+  private static int getUTFLength(@NonNull String string) {
+    int result = Short.BYTES;
+    for (int i = 0; i < string.length(); i++) {
+      final char c = string.charAt(i);
+      result += ((c >= 0x0001) && (c <= 0x007F)) ? 1 : (c <= 0x07FF) ? 2 : 3;
+    }
+    return result;
+  }
+
+  @NonNull
+  public static Bundle toBundle(@NonNull List<HistoryEntry> entries) {
+    final String[] bundleRadioIds = new String[entries.size()];
+    final String[] bundleTitles = new String[entries.size()];
+    final long[] bundleDates = new long[entries.size()];
+    for (int i = 0; i < entries.size(); i++) {
+      final HistoryEntry entry = entries.get(i);
+      bundleRadioIds[i] = entry.radioId;
+      bundleTitles[i] = entry.title;
+      bundleDates[i] = entry.date;
+    }
+    final Bundle bundle = new Bundle();
+    bundle.putStringArray(RADIO_IDS, bundleRadioIds);
+    bundle.putStringArray(TITLES, bundleTitles);
+    bundle.putLongArray(DATES, bundleDates);
+    return bundle;
+  }
+
+  // As given by toBundle
+  @NonNull
+  public static List<HistoryEntry> getEntries(@Nullable Bundle bundle) {
+    final List<HistoryEntry> result = new ArrayList<>();
+    final String[] bundleRadioIds = (bundle == null) ? null : bundle.getStringArray(RADIO_IDS);
+    final String[] bundleTitles = (bundle == null) ? null : bundle.getStringArray(TITLES);
+    final long[] bundleDates = (bundle == null) ? null : bundle.getLongArray(DATES);
+    if ((bundleRadioIds != null) && (bundleTitles != null) && (bundleDates != null)) {
+      final int length = Math.min(bundleRadioIds.length, Math.min(bundleTitles.length, bundleDates.length));
+      for (int i = 0; i < length; i++) {
+        result.add(new HistoryEntry(bundleRadioIds[i], bundleTitles[i], bundleDates[i]));
+      }
+    }
+    return result;
+  }
+
+  // Query as given by arguments, see RADIO_ID, DATE and QUERY
+  public void query(@NonNull Bundle args, @NonNull Consumer<List<HistoryEntry>> callback) {
+    final String radioId = args.getString(RADIO_ID);
+    final String query = args.getString(QUERY);
+    final long date = args.getLong(DATE, System.currentTimeMillis());
+    if (query != null) {
+      search(query, callback);
+    } else if (radioId != null) {
+      getAt(radioId, date, entry -> callback.accept(
+        (entry == null) ? new ArrayList<>() : new ArrayList<>(Collections.singletonList(entry))));
+    } else {
+      getDay(date, callback);
+    }
+  }
+
+  // Same title again on same radio is ignored
+  public void add(@NonNull String radioId, @NonNull String title) {
+    if (!title.isEmpty()) {
+      queue(new Event(radioId, title, System.currentTimeMillis()));
+    }
+  }
+
+  // Listening of radio stops here
+  public void end(@NonNull String radioId) {
+    queue(new Event(radioId, null, System.currentTimeMillis()));
+  }
+
+  // Title playing on radio at date; null if none
+  public void getAt(@NonNull String radioId, long date, @NonNull Consumer<HistoryEntry> callback) {
+    query(() -> {
+      final Integer radio = radioNumbers.get(radioId);
+      final Ints indexes = (radio == null) ? null : radioEvents.get(radio);
+      HistoryEntry result = null;
+      if (indexes != null) {
+        // Last event of radio not after date, if the same day
+        final int position = indexes.floor(date, events);
+        if (position >= 0) {
+          final int index = indexes.get(position);
+          if ((events.titles[index] != END) && (toDay(events.dates[index]) == toDay(date))) {
+            result = getHistoryEntry(index);
+          }
+        }
+      }
+      final HistoryEntry entry = result;
+      HANDLER.post(() -> callback.accept(entry));
+    });
+  }
+
+  // Titles of the day of date, in time order
+  public void getDay(long date, @NonNull Consumer<List<HistoryEntry>> callback) {
+    query(() -> {
+      final long day = toDay(date);
+      final Integer start = dayStarts.get(day);
+      final List<HistoryEntry> result = new ArrayList<>();
+      if (start != null) {
+        final Entry<Long, Integer> next = dayStarts.higherEntry(day);
+        final int end = (next == null) ? events.size : next.getValue();
+        for (int index = start; index < end; index++) {
+          if (events.titles[index] != END) {
+            result.add(getHistoryEntry(index));
+          }
+        }
+      }
+      HANDLER.post(() -> callback.accept(result));
+    });
+  }
+
+  // Titles containing query, case insensitive; latest first
+  public void search(@NonNull String query, @NonNull Consumer<List<HistoryEntry>> callback) {
+    query(() -> {
+      final String lowerQuery = query.toLowerCase(Locale.ROOT);
+      // Distinct titles are much fewer than events
+      final boolean[] isMatching = new boolean[titles.size()];
+      for (int title = 0; title < titles.size(); title++) {
+        isMatching[title] = titles.get(title).toLowerCase(Locale.ROOT).contains(lowerQuery);
+      }
+      final List<HistoryEntry> result = new ArrayList<>();
+      for (int index = events.size - 1; index >= 0; index--) {
+        final int title = events.titles[index];
+        if ((title != END) && isMatching[title]) {
+          result.add(getHistoryEntry(index));
+        }
+      }
+      HANDLER.post(() -> callback.accept(result));
+    });
+  }
+
+  // Writes pending events now
+  public void flush() {
+    HANDLER.removeCallbacks(flush);
+    if (!pendingEvents.isEmpty()) {
+      final List<Event> batch = pendingEvents;
+      pendingEvents = new ArrayList<>();
+      worker.execute(() -> write(batch));
+    }
+  }
+
+  // Pending events are written first
+  public void release() {
+    flush();
+    worker.execute(this::close);
+    worker.shutdown();
+  }
+
+  private void queue(@NonNull Event event) {
+    pendingEvents.add(event);
+    HANDLER.removeCallbacks(flush);
+    HANDLER.postDelayed(flush, FLUSH_DELAY_MS);
+  }
+
+  // Pending events are taken into account
+  private void query(@NonNull Runnable runnable) {
+    flush();
+    worker.execute(runnable);
+  }
+
+  @NonNull
+  private HistoryEntry getHistoryEntry(int index) {
+    return new HistoryEntry(
+      radioIds.get(events.radios[index]), titles.get(events.titles[index]), events.dates[index]);
+  }
+
+  private void load() {
+    if (!file.exists()) {
+      return;
+    }
+    long validLength = 0;
+    try (final DataInputStream dataInputStream =
+           new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+      if (dataInputStream.readInt() != MAGIC) {
+        Log.w(LOG_TAG, "load: unknown log format, left alone");
+        isUnknownFormat = true;
+        return;
+      }
+      validLength = Integer.BYTES;
+      while (true) {
+        final byte type;
+        try {
+          type = dataInputStream.readByte();
+        } catch (EOFException eOFException) {
+          break;
+        }
+        switch (type) {
+          case RECORD_RADIO:
+            final String radioId = dataInputStream.readUTF();
+            radioNumbers.put(radioId, radioIds.size());
+            radioIds.add(radioId);
+            validLength += Byte.BYTES + getUTFLength(radioId);
+            break;
+          case RECORD_TITLE:
+            final String title = dataInputStream.readUTF();
+            titleNumbers.put(title, titles.size());
+            titles.add(title);
+            validLength += Byte.BYTES + getUTFLength(title);
+            break;
+          case RECORD_EVENT:
+            final long date = dataInputStream.readLong();
+            final int radio = dataInputStream.readInt();
+            final int titleNumber = dataInputStream.readInt();
+            if ((radio >= radioIds.size()) || (titleNumber >= titles.size())) {
+              throw new IOException("Reference to unknown record");
+            }
+            index(date, radio, titleNumber);
+            validLength += Byte.BYTES + Long.BYTES + 2 * Integer.BYTES;
+            break;
+          default:
+            throw new IOException("Unknown record type");
+        }
+      }
+    } catch (IOException iOException) {
+      // Torn tail after a crash: anything beyond last valid record is dropped
+      Log.w(LOG_TAG, "load: log truncated at " + validLength, iOException);
+      try (final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+        randomAccessFile.setLength(validLength);
+      } catch (IOException truncateIOException) {
+        Log.e(LOG_TAG, "load: internal failure", truncateIOException);
+      }
+    }
+    Log.d(LOG_TAG, "load: " + events.size + " events, " + titles.size() + " titles");
+  }
+
+  private void write(@NonNull List<Event> batch) {
+    try {
+      final DataOutputStream output = getDataOutputStream();
+      for (final Event event : batch) {
+        Integer radio = radioNumbers.get(event.radioId);
+        if (radio == null) {
+          radio = radioIds.size();
+          output.writeByte(RECORD_RADIO);
+          output.writeUTF(event.radioId);
+          radioNumbers.put(event.radioId, radio);
+          radioIds.add(event.radioId);
+        }
+        // Radio last event
+        final Ints indexes = radioEvents.get(radio);
+        final int last = ((indexes == null) || (indexes.size == 0)) ? -1 : indexes.get(indexes.size - 1);
+        final int lastTitle = (last < 0) ? END : events.titles[last];
+        int title = END;
+        if (event.title != null) {
+          final Integer known = titleNumbers.get(event.title);
+          if (known == null) {
+            title = titles.size();
+            output.writeByte(RECORD_TITLE);
+            output.writeUTF(event.title);
+            titleNumbers.put(event.title, title);
+            titles.add(event.title);
+          } else {
+            title = known;
+          }
+        }
+        // Nothing new
+        if (title == lastTitle) {
+          continue;
+        }
+        // Time order is kept, even if clock goes backward
+        final long date = (events.size == 0) ? event.date : Math.max(event.date, events.dates[events.size - 1]);
+        output.writeByte(RECORD_EVENT);
+        output.writeLong(date);
+        output.writeInt(radio);
+        output.writeInt(title);
+        index(date, radio, title);
+      }
+      output.flush();
+    } catch (IOException iOException) {
+      Log.e(LOG_TAG, "write: internal failure", iOException);
+    }
+  }
+
+  @NonNull
+  private DataOutputStream getDataOutputStream() throws IOException {
+    if (isUnknownFormat) {
+      throw new IOException("Unknown log format");
+    }
+    if (dataOutputStream == null) {
+      final boolean isNew = !file.exists() || (file.length() == 0);
+      dataOutputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+      if (isNew) {
+        dataOutputStream.writeInt(MAGIC);
+      }
+    }
+    return dataOutputStream;
+  }
+
+  private void close() {
+    if (dataOutputStream != null) {
+      try {
+        dataOutputStream.close();
+      } catch (IOException iOException) {
+        Log.e(LOG_TAG, "close: internal failure", iOException);
+      }
+      dataOutputStream = null;
+    }
+  }
+
+  private void index(long date, int radio, int title) {
+    final int index = events.add(date, radio, title);
+    final long day = toDay(date);
+    if ((dayStarts.isEmpty()) || (dayStarts.lastKey() < day)) {
+      dayStarts.put(day, index);
+    }
+    radioEvents.computeIfAbsent(radio, key -> new Ints()).add(index);
+  }
+
+  public static class HistoryEntry {
+    @NonNull
+    private final String radioId;
+    @NonNull
+    private final String title;
+    private final long date;
+
+    private HistoryEntry(@NonNull String radioId, @NonNull String title, long date) {
+      this.radioId = radioId;
+      this.title = title;
+      this.date = date;
+    }
+
+    // Radio may no longer exist
+    @NonNull
+    public String getRadioId() {
+      return radioId;
+    }
+
+    @NonNull
+    public String getTitle() {
+      return title;
+    }
+
+    // Start time, as given by System.currentTimeMillis
+    public long getDate() {
+      return date;
+    }
+  }
+
+  // Not yet written
+  private static class Event {
+    @NonNull
+    private final String radioId;
+    @Nullable
+    private final String title; // null for end
+    private final long date;
+
+    private Event(@NonNull String radioId, @Nullable String title, long date) {
+      this.radioId = radioId;
+      this.title = title;
+      this.date = date;
+    }
+  }
+
+  // Events as columns of primitives
+  private static class Events {
+    private long[] dates = new long[256];
+    private int[] radios = new int[256];
+    private int[] titles = new int[256];
+    private int size = 0;
+
+    private int add(long date, int radio, int title) {
+      if (size == dates.length) {
+        dates = Arrays.copyOf(dates, size * 2);
+        radios = Arrays.copyOf(radios, size * 2);
+        titles = Arrays.copyOf(titles, size * 2);
+      }
+      dates[size] = date;
+      radios[size] = radio;
+      titles[size] = title;
+      return size++;
+    }
+  }
+
+  // Growable event indexes, in time order
+  private static class Ints {
+    private int[] values = new int[16];
+    private int size = 0;
+
+    private void add(int value) {
+      if (size == values.length) {
+        values = Arrays.copyOf(values, size * 2);
+      }
+      values[size++] = value;
+    }
+
+    private int get(int position) {
+      return values[position];
+    }
+
+    // Position of last event not after date, -1 if none
+    private int floor(long date, @NonNull Events events) {
+      int low = 0;
+      int high = size - 1;
+      int result = -1;
+      while (low <= high) {
+        final int middle = (low + high) >>> 1;
+        if (events.dates[values[middle]] <= date) {
+          result = middle;
+          low = middle + 1;
+        } else {
+          high = middle - 1;
+        }
+      }
+      return result;
+    }
+  }
+}
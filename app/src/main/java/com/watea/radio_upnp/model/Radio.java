@@ -30,6 +30,7 @@ import android.graphics.BitmapFactory;
 import android.net.Uri;
 import android.util.Base64;
 import android.util.Log;
+import android.util.LruCache;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -40,6 +41,8 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
@@ -52,6 +55,9 @@ public class Radio {
   @NonNull
   public static final Radio DUMMY_RADIO;
   private static final int RADIO_ICON_SIZE = 300;
+  private static final int LOGO_QUALITY = 90;
+  // Encoded icons of last played radios
+  private static final LruCache<Radio, Artwork> ARTWORKS = new LruCache<>(4);
   private static final String LOG_TAG = Radio.class.getSimpleName();
   private static final String SPACER = ";";
   public static final String EXPORT_HEAD =
@@ -59,6 +65,7 @@ public class Radio {
   private static final String ID = "id";
   private static final String NAME = "name";
   private static final String ICON = "icon";
+  private static final String ICON_KEY = "icon_key";
   private static final String URL = "url";
   private static final String WEB_PAGE_URL = "web_page_url";
   private static final String MIME = "mime";
@@ -90,10 +97,14 @@ public class Radio {
   private final int quality;
   @NonNull
   private String name;
-  @NonNull
-  private Bitmap icon;
-  @NonNull
-  private String base64Icon; // cache
+  // Icon not yet written to iconStore; strong reference until then
+  @Nullable
+  private volatile Bitmap pendingIcon;
+  // Icon in iconStore; pendingIcon and iconKey are not both null, unless store failed
+  @Nullable
+  private volatile String iconKey;
+  @Nullable
+  private volatile IconStore iconStore;
   @NonNull
   private URL url;
   @Nullable
@@ -113,11 +124,78 @@ public class Radio {
     @NonNull String mime,
     int quality,
     boolean isPreferred) {
+    this(
+      id,
+      name,
+      normalize((icon == null) ? getBitmapFrom(base64Icon) : icon),
+      null,
+      null,
+      url,
+      webPageUrl,
+      mime,
+      quality,
+      isPreferred);
+    assert (icon == null) != (base64Icon == null);
+  }
+
+  // Icon is held by iconStore, decoded on demand
+  Radio(@NonNull DataInput dataInput, @NonNull IconStore iconStore) throws IOException {
+    this(
+      dataInput.readUTF(),
+      dataInput.readUTF(),
+      null,
+      null,
+      iconStore,
+      new URL(dataInput.readUTF()),
+      getURLFrom(dataInput.readUTF()),
+      dataInput.readUTF(),
+      dataInput.readInt(),
+      dataInput.readBoolean());
+    final String key = dataInput.readUTF();
+    iconKey = key.isEmpty() ? null : key;
+  }
+
+  // Icon is held by iconStore. If part of jSONObject, it is written to iconStore at once,
+  // pinned there until IconStore.unpin(), so that only its key is held.
+  // Intended to be called in own thread.
+  Radio(@NonNull JSONObject jSONObject, @NonNull IconStore iconStore) throws JSONException, MalformedURLException {
+    this(
+      getId(jSONObject),
+      jSONObject.getString(NAME),
+      jSONObject.has(ICON) ? normalize(getBitmapFrom(jSONObject.getString(ICON))) : null,
+      jSONObject.has(ICON) ? null : jSONObject.optString(ICON_KEY, null),
+      iconStore,
+      new URL(jSONObject.getString(URL)),
+      getURLFrom(jSONObject.getString(WEB_PAGE_URL)),
+      jSONObject.getString(MIME),
+      jSONObject.getInt(QUALITY),
+      jSONObject.getBoolean(IS_PREFERRED));
+    // Kept pending if store fails
+    final Bitmap icon = pendingIcon;
+    if (icon != null) {
+      final String key = iconStore.writePinned(icon);
+      if (key != null) {
+        onIconStored(icon, key);
+      }
+    }
+  }
+
+  private Radio(
+    @NonNull String id,
+    @NonNull String name,
+    @Nullable Bitmap pendingIcon,
+    @Nullable String iconKey,
+    @Nullable IconStore iconStore,
+    @NonNull URL url,
+    @Nullable URL webPageUrl,
+    @NonNull String mime,
+    int quality,
+    boolean isPreferred) {
     this.id = id;
     this.name = name;
-    assert (icon == null) != (base64Icon == null);
-    this.icon = normalize((icon == null) ? getBitmapFrom(base64Icon) : icon);
-    this.base64Icon = (base64Icon == null) ? iconToBase64String() : base64Icon;
+    this.pendingIcon = pendingIcon;
+    this.iconKey = iconKey;
+    this.iconStore = iconStore;
     this.url = url;
     this.webPageUrl = webPageUrl;
     this.mime = mime;
@@ -214,7 +292,7 @@ public class Radio {
         final URL url = new URL(fields[1]);
         final URL webPageUrl = fields[2].isEmpty() ? null : new URL(fields[2]);
         final boolean isPreferred = Boolean.parseBoolean(fields[3]);
-        final Radio radio = new Radio(name, DUMMY_RADIO.base64Icon, url, webPageUrl);
+        final Radio radio = new Radio(name, DUMMY_RADIO.getIconNow(), url, webPageUrl);
         radio.setIsPreferred(isPreferred);
         return radio;
       } catch (MalformedURLException malformedURLException) {
@@ -238,6 +316,12 @@ public class Radio {
     return byteArrayOutputStream.toByteArray();
   }
 
+  // metadata as given by getMetadataJSONObject
+  @NonNull
+  static JSONObject setIconKey(@NonNull JSONObject metadata, @NonNull String key) throws JSONException {
+    return metadata.put(ICON_KEY, key);
+  }
+
   @NonNull
   private static String getNextId() {
     return Integer.toString(++lastId);
@@ -297,14 +381,28 @@ public class Radio {
     return (webPageUrl == null) ? null : Uri.parse(webPageUrl.toString());
   }
 
+  // Placeholder until icon is decoded; Radios listeners are then told.
+  // Must be called from UI thread.
   @NonNull
   public Bitmap getIcon() {
-    return icon;
+    final Bitmap pending = pendingIcon;
+    if (pending != null) {
+      return pending;
+    }
+    final IconStore currentIconStore = iconStore;
+    final String key = iconKey;
+    if ((currentIconStore != null) && (key != null)) {
+      final Bitmap cached = currentIconStore.get(key);
+      if (cached != null) {
+        return cached;
+      }
+      currentIconStore.decode(this, key);
+    }
+    return DUMMY_RADIO.getIconNow();
   }
 
-  public void setIcon(@NonNull Bitmap icon) {
-    this.icon = normalize(icon);
-    base64Icon = iconToBase64String();
+  public synchronized void setIcon(@NonNull Bitmap icon) {
+    pendingIcon = normalize(icon);
   }
 
   public boolean isPreferred() {
@@ -322,10 +420,21 @@ public class Radio {
 
   @NonNull
   public MediaMetadata.Builder getMediaMetadataBuilder(@NonNull String postfix, @NonNull String information) {
+    return getBaseMediaMetadataBuilder(postfix, information)
+      .setArtworkData(getArtworkBytes(), MediaMetadata.PICTURE_TYPE_FRONT_COVER);
+  }
+
+  // Artwork by reference, no icon bytes; for browsing
+  @NonNull
+  public MediaMetadata.Builder getMediaMetadataBuilder(@Nullable Uri artworkUri) {
+    return getBaseMediaMetadataBuilder("", "").setArtworkUri(artworkUri);
+  }
+
+  @NonNull
+  private MediaMetadata.Builder getBaseMediaMetadataBuilder(@NonNull String postfix, @NonNull String information) {
     information = name.equals(information) ? "" : information;
     final String postfixName = name + postfix;
     return new MediaMetadata.Builder()
-      .setArtworkData(iconToBytes(), MediaMetadata.PICTURE_TYPE_FRONT_COVER)
       .setTitle(postfixName)
       .setSubtitle(postfixName)
       .setAlbumTitle(information.isEmpty() ? "" : postfixName)
@@ -342,24 +451,63 @@ public class Radio {
       export(Boolean.toString(isPreferred));
   }
 
+  // Any thread. PNG, built once per icon: same array while icon is unchanged.
+  @NonNull
+  public byte[] getArtworkBytes() {
+    final Artwork artwork = getArtwork();
+    byte[] result = artwork.bytes;
+    if (result == null) {
+      result = getIconBytes();
+      artwork.bytes = result;
+    }
+    return result;
+  }
+
+  // Any thread. JPEG, built once per icon.
+  @NonNull
+  public byte[] getLogoBytes() {
+    final Artwork artwork = getArtwork();
+    byte[] result = artwork.logoBytes;
+    if (result == null) {
+      result = iconToBytes(Bitmap.CompressFormat.JPEG, LOGO_QUALITY);
+      artwork.logoBytes = result;
+    }
+    return result;
+  }
+
+  // Any thread. size: in pixels, built once per icon and size.
+  @NonNull
+  public Bitmap getNotificationIcon(int size) {
+    final Artwork artwork = getArtwork();
+    Bitmap result = artwork.notificationIcon;
+    if ((result == null) || (result.getWidth() != size)) {
+      result = createScaledBitmap(getIconNow(), size);
+      artwork.notificationIcon = result;
+    }
+    return result;
+  }
+
+  // Any thread; icon may have to be read from store
   @NonNull
   public JSONObject getJSONObject() throws JSONException {
-    return new JSONObject()
-      .put(ID, id)
-      .put(NAME, name)
-      .put(ICON, base64Icon)
-      .put(URL, url.toString())
-      .put(WEB_PAGE_URL, (webPageUrl == null) ? "" : webPageUrl.toString())
-      .put(MIME, mime)
-      .put(QUALITY, quality)
-      .put(IS_PREFERRED, isPreferred);
+    return getBaseJSONObject().put(ICON, Base64.encodeToString(getIconBytes(), Base64.DEFAULT));
+  }
+
+  // Icon by reference to iconStore, if already there
+  @NonNull
+  JSONObject getMetadataJSONObject() throws JSONException {
+    final String key = iconKey;
+    final JSONObject jSONObject = getBaseJSONObject();
+    return ((pendingIcon == null) && (key != null)) ? setIconKey(jSONObject, key) : jSONObject;
   }
 
+  // Must be called from UI thread
   @NonNull
   public Bitmap resizeToWidth(int targetWidth) {
-    final float ratio = (float) icon.getHeight() / icon.getWidth();
+    final Bitmap bitmap = getIcon();
+    final float ratio = (float) bitmap.getHeight() / bitmap.getWidth();
     final int targetHeight = (int) (targetWidth * ratio);
-    return Bitmap.createScaledBitmap(icon, targetWidth, targetHeight, true);
+    return Bitmap.createScaledBitmap(bitmap, targetWidth, targetHeight, true);
   }
 
   @Nullable
@@ -388,18 +536,101 @@ public class Radio {
     return connectionSet;
   }
 
+  // Any thread
   public byte[] iconToBytes(@NonNull Bitmap.CompressFormat format, int quality) {
-    return iconToBytes(icon, format, quality);
+    return iconToBytes(getIconNow(), format, quality);
+  }
+
+  // Any thread. PNG, straight from store if there.
+  @NonNull
+  public byte[] getIconBytes() {
+    final IconStore currentIconStore = iconStore;
+    final String key = iconKey;
+    final byte[] bytes = ((pendingIcon == null) && (currentIconStore != null) && (key != null)) ?
+      currentIconStore.read(key) : null;
+    return (bytes == null) ? iconToBytes(Bitmap.CompressFormat.PNG, 100) : bytes;
+  }
+
+  void writeTo(@NonNull DataOutput dataOutput) throws IOException {
+    dataOutput.writeUTF(id);
+    dataOutput.writeUTF(name);
+    dataOutput.writeUTF(url.toString());
+    dataOutput.writeUTF((webPageUrl == null) ? "" : webPageUrl.toString());
+    dataOutput.writeUTF(mime);
+    dataOutput.writeInt(quality);
+    dataOutput.writeBoolean(isPreferred);
+    final String key = iconKey;
+    dataOutput.writeUTF((key == null) ? "" : key);
+  }
+
+  // Any thread. Key of icon in store, null if not stored yet.
+  @Nullable
+  public String getStoredIconKey() {
+    final String key = iconKey;
+    return ((pendingIcon == null) && (iconStore != null)) ? key : null;
   }
 
+  // Entry is renewed when icon changes
   @NonNull
-  private byte[] iconToBytes() {
-    return iconToBytes(Bitmap.CompressFormat.PNG, 100);
+  private Artwork getArtwork() {
+    final Bitmap icon = pendingIcon;
+    final Object source = (icon == null) ? iconKey : icon;
+    Artwork result = ARTWORKS.get(this);
+    if ((result == null) || (result.source != source)) {
+      result = new Artwork(source);
+      ARTWORKS.put(this, result);
+    }
+    return result;
+  }
+
+  // null if icon never stored
+  @Nullable
+  String getIconKey() {
+    return iconKey;
+  }
+
+  // Icon to be written to iconStore, null if already held by it.
+  // Radio is then bound to iconStore.
+  @Nullable
+  Bitmap takeIconToStore(@NonNull IconStore iconStore) {
+    this.iconStore = iconStore;
+    return pendingIcon;
+  }
+
+  // Any thread. Pending icon is released, unless changed in the meantime.
+  // Returns true if released.
+  synchronized boolean onIconStored(@NonNull Bitmap bitmap, @NonNull String key) {
+    if (pendingIcon == bitmap) {
+      iconKey = key;
+      pendingIcon = null;
+      return true;
+    }
+    return false;
+  }
+
+  @NonNull
+  private JSONObject getBaseJSONObject() throws JSONException {
+    return new JSONObject()
+      .put(ID, id)
+      .put(NAME, name)
+      .put(URL, url.toString())
+      .put(WEB_PAGE_URL, (webPageUrl == null) ? "" : webPageUrl.toString())
+      .put(MIME, mime)
+      .put(QUALITY, quality)
+      .put(IS_PREFERRED, isPreferred);
   }
 
+  // Any thread; decodes synchronously if needed
   @NonNull
-  private String iconToBase64String() {
-    return Base64.encodeToString(iconToBytes(), Base64.DEFAULT);
+  private Bitmap getIconNow() {
+    final Bitmap pending = pendingIcon;
+    if (pending != null) {
+      return pending;
+    }
+    final IconStore currentIconStore = iconStore;
+    final String key = iconKey;
+    final Bitmap result = ((currentIconStore == null) || (key == null)) ? null : currentIconStore.getNow(key);
+    return (result == null) ? DUMMY_RADIO.getIconNow() : result;
   }
 
   public static class ConnectionSet {
@@ -429,4 +660,20 @@ public class Radio {
       return url;
     }
   }
+
+  // Encodings of one icon, built on demand
+  private static class Artwork {
+    @Nullable
+    private final Object source; // Icon or its key
+    @Nullable
+    private volatile byte[] bytes = null;
+    @Nullable
+    private volatile byte[] logoBytes = null;
+    @Nullable
+    private volatile Bitmap notificationIcon = null;
+
+    private Artwork(@Nullable Object source) {
+      this.source = source;
+    }
+  }
 }
\ No newline at end of file
@@ -23,6 +23,7 @@
 
 package com.watea.radio_upnp.model;
 
+import android.app.ActivityManager;
 import android.content.Context;
 import android.content.SharedPreferences;
 import android.os.Handler;
@@ -41,19 +42,23 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.BufferedReader;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.lang.reflect.Type;
 import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.RandomAccess;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
@@ -74,12 +79,38 @@ public class Radios extends ArrayList<Radio> {
   private static boolean isPreferred = false;
   private static volatile boolean isInit = false;
   private final List<Listener> listeners = new ArrayList<>();
+  // Indexes, maintained on every mutation
+  private final Map<String, Radio> idIndex = new HashMap<>();
+  private final Map<String, Radio> uRLIndex = new HashMap<>(); // By normalized URL
+  private final Map<String, String> uRLKeys = new HashMap<>(); // ID -> key in uRLIndex
+  private final Map<String, Integer> positions = new HashMap<>(); // ID -> index
+  private final SearchIndex searchIndex = new SearchIndex(this::indexOf); // By name
+  private final List<Radio> preferredRadios = new ArrayList<>(); // In radios order
+  private final Map<String, Integer> preferredPositions = new HashMap<>(); // ID -> index in preferredRadios
+  private final List<Radio> preferredView = new PreferredView();
   @NonNull
-  private final String fileName;
+  private final RadiosStore store;
 
   private Radios(@NonNull Context context) {
     super();
-    fileName = context.getFilesDir().getPath() + "/" + FILE;
+    store = new RadiosStore(
+      getFileName(context),
+      ((ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE)).getMemoryClass(),
+      () -> new ArrayList<>(this),
+      radio -> tellListeners(true, null, listener -> listener.onIconChange(radio)),
+      radio -> tellListeners(true, null, listener -> listener.onIconStored(radio)));
+  }
+
+  // Any thread, even before init; null if key is not a stored icon key.
+  // File may not exist.
+  @Nullable
+  public static File getIconFile(@NonNull Context context, @NonNull String key) {
+    return IconStore.getFile(RadiosStore.getIconDirectory(getFileName(context)), key);
+  }
+
+  @NonNull
+  private static String getFileName(@NonNull Context context) {
+    return context.getFilesDir().getPath() + "/" + FILE;
   }
 
   @NonNull
@@ -110,13 +141,18 @@ public class Radios extends ArrayList<Radio> {
         }
         // Init
         new Thread(() -> {
-          try (final FileInputStream fileInputStream = new FileInputStream(radios.fileName)) {
-            // If IDs have been generated for backward compatibility, we shall store result
-            radios.importFrom(
-              true,
-              fileInputStream,
-              Radio::isBackwardCompatible,
-              unused -> onInitFailed(loadingAlertDialog));
+          try {
+            // Stored radios are all kept, even if their URLs are alike
+            final List<Radio> loaded = radios.store.load();
+            radios.putOnUiThread(() -> {
+              radios.addAllIndexed(loaded, false);
+              onInitFailed(loadingAlertDialog);
+              // If IDs have been generated for backward compatibility, journal has been replayed
+              // or former format has been read, we shall store result
+              if (Radio.isBackwardCompatible() || radios.store.isCompactionDue()) {
+                radios.write();
+              }
+            });
           } catch (Exception exception) {
             Log.e(LOG_TAG, "setInstance: internal failure", exception);
             radios.putOnUiThread(() -> onInitFailed(loadingAlertDialog));
@@ -132,7 +168,7 @@ public class Radios extends ArrayList<Radio> {
 
   public static void setPreferred(boolean isPreferred) {
     Radios.isPreferred = isPreferred;
-    getInstance().tellListeners(true, false, Listener::onPreferredChange);
+    getInstance().tellListeners(true, null, Listener::onPreferredChange);
   }
 
   public static boolean isInit() {
@@ -169,8 +205,56 @@ public class Radios extends ArrayList<Radio> {
     }
   }
 
+  // Only JSON can be parsed; icons are written to iconStore while parsing.
+  // Intended to be called in own thread.
+  @NonNull
+  static List<Radio> parse(@NonNull InputStream inputStream, @NonNull IconStore iconStore) throws IOException {
+    final List<Radio> result = new ArrayList<>();
+    final Gson gson = new Gson();
+    // Define the type for the parsing
+    final Type listType = new TypeToken<List<Map<String, Object>>>() {
+    }.getType();
+    // Parse JSON file
+    try (final InputStreamReader reader = new InputStreamReader(inputStream)) {
+      final List<Map<String, Object>> jSONObjects = gson.fromJson(reader, listType);
+      if (jSONObjects == null) {
+        return result;
+      }
+      for (final Map<String, Object> jSONObject : jSONObjects) {
+        try {
+          result.add(new Radio(new JSONObject(jSONObject), iconStore));
+        } catch (JSONException jSONException) {
+          Log.e(LOG_TAG, "parse: internal JSON failure", jSONException);
+        } catch (MalformedURLException malformedURLException) {
+          Log.e(LOG_TAG, "parse: internal failure creating radio", malformedURLException);
+        }
+      }
+    }
+    return result;
+  }
+
+  // Key for URL identity: scheme and host case, default port and trailing '/' are not significant
+  @NonNull
+  static String normalize(@NonNull URL uRL) {
+    final int port = uRL.getPort();
+    final String file = uRL.getFile();
+    return uRL.getProtocol().toLowerCase(Locale.ROOT) + "://" +
+      uRL.getHost().toLowerCase(Locale.ROOT) +
+      (((port < 0) || (port == uRL.getDefaultPort())) ? "" : ":" + port) +
+      (file.endsWith("/") ? file.substring(0, file.length() - 1) : file);
+  }
+
+  // Imported radios by normalized URL, duplicates dropped; order is kept.
+  // Intended to be called in own thread.
+  @NonNull
+  private static Map<String, Radio> getBatch(@NonNull List<Radio> radios) {
+    final Map<String, Radio> result = new LinkedHashMap<>();
+    radios.forEach(radio -> result.putIfAbsent(normalize(radio.getURL()), radio));
+    return result;
+  }
+
   private static void onInit() {
-    getInstance().tellListeners(true, false, Listener::onInitEnd);
+    getInstance().tellListeners(true, null, Listener::onInitEnd);
     isInit = true;
   }
 
@@ -191,9 +275,10 @@ public class Radios extends ArrayList<Radio> {
     listeners.remove(listener);
   }
 
+  // Live view, read-only if preferred; O(1) get and indexOf
   @NonNull
   public List<Radio> getActuallySelectedRadios() {
-    return isPreferred ? stream().filter(Radio::isPreferred).collect(Collectors.toList()) : this;
+    return isPreferred ? preferredView : this;
   }
 
   public boolean swap(int from, int to) {
@@ -202,8 +287,17 @@ public class Radios extends ArrayList<Radio> {
       return false;
     }
     set(from, set(to, get(from)));
+    positions.put(get(from).getId(), from);
+    positions.put(get(to).getId(), to);
+    // Order among preferred radios may have changed
+    final Radio fromRadio = get(from);
+    final Radio toRadio = get(to);
+    unindexPreferred(fromRadio);
+    unindexPreferred(toRadio);
+    indexPreferred(fromRadio);
+    indexPreferred(toRadio);
     // No write here: caller is responsible for triggering write after drag ends
-    return tellListeners(true, false, listener -> listener.onMove(from, to));
+    return tellListeners(true, null, listener -> listener.onMove(from, to));
   }
 
   @Override
@@ -215,7 +309,8 @@ public class Radios extends ArrayList<Radio> {
   @NonNull
   public Radio remove(int index) {
     final Radio result = super.remove(index);
-    tellListeners(true, true, listener -> listener.onRemove(index));
+    unindex(result, index);
+    tellListeners(true, () -> store.remove(result), listener -> listener.onRemove(index));
     return result;
   }
 
@@ -224,26 +319,54 @@ public class Radios extends ArrayList<Radio> {
   public boolean remove(@Nullable Object o) {
     assert o != null;
     final int index = indexOf(o);
-    return tellListeners(super.remove(o), true, listener -> listener.onRemove(index));
+    if (index < 0) {
+      return false;
+    }
+    remove(index);
+    return true;
   }
 
   @Override
   public boolean addAll(@NonNull Collection<? extends Radio> c) {
-    return tellListeners(super.addAll(c), true, listener -> listener.onAddAll(c));
+    // Bulk: full write
+    return tellListeners(addAllIndexed(c), store::scheduleCompaction, listener -> listener.onAddAll(c));
+  }
+
+  // O(1); identity, as ArrayList with Radio
+  @Override
+  public int indexOf(@Nullable Object o) {
+    if (o instanceof Radio) {
+      final Integer position = positions.get(((Radio) o).getId());
+      if ((position != null) && (get(position) == o)) {
+        return position;
+      }
+    }
+    return -1;
   }
 
   public boolean modify(@NonNull Radio radio) {
     final int index = indexOf(radio);
     if (index >= 0) {
       set(index, radio);
-      return tellListeners(true, true, listener -> listener.onChange(radio));
+      // URL, name and preferred flag may have changed
+      indexURL(radio);
+      searchIndex.put(radio);
+      indexPreferred(radio);
+      return tellListeners(true, () -> store.change(radio), listener -> listener.onChange(radio));
     }
     return false;
   }
 
+  // Only a few bytes are journaled
   public void setPreferred(@NonNull Radio radio, boolean isPreferred) {
     radio.setIsPreferred(isPreferred);
-    modify(radio);
+    final int index = indexOf(radio);
+    if (index >= 0) {
+      set(index, radio);
+      tellListeners(true, () -> store.setPreferred(radio), listener -> listener.onChange(radio));
+      // Actually selected radios have changed
+      tellListeners(indexPreferred(radio) && Radios.isPreferred, null, Listener::onPreferredChange);
+    }
   }
 
   // radio must be valid. direction must be -1 or 1. Use actually selected radios.
@@ -257,130 +380,254 @@ public class Radios extends ArrayList<Radio> {
 
   @Nullable
   public Radio getRadioFromId(@NonNull String id) {
-    return stream().filter(radio -> radio.getId().equals(id)).findFirst().orElse(null);
+    return idIndex.get(id);
   }
 
   @Nullable
   public Radio getRadioFromURL(@NonNull String uRL) {
-    return stream().filter(radio -> uRL.equals(radio.getURL().toString())).findFirst().orElse(null);
+    try {
+      return uRLIndex.get(normalize(new URL(uRL)));
+    } catch (MalformedURLException malformedURLException) {
+      Log.d(LOG_TAG, "getRadioFromURL: invalid URL " + uRL);
+      return null;
+    }
   }
 
+  // Closest match
   @Nullable
   public Radio getRadioFromName(@NonNull String name) {
-    final String normalized = name.trim().toLowerCase(Locale.getDefault());
-    Radio result = stream()
-      .filter(radio -> radio.getName().toLowerCase(Locale.getDefault()).equals(normalized))
-      .findFirst().orElse(null);
-    if (result == null) {
-      result = stream()
-        .filter(radio -> radio.getName().toLowerCase(Locale.getDefault()).contains(normalized))
-        .findFirst().orElse(null);
-    }
-    return result;
+    final List<Radio> result = searchIndex.search(name);
+    return result.isEmpty() ? null : result.get(0);
+  }
+
+  // Fuzzy search on names, best first
+  @NonNull
+  public List<Radio> search(@NonNull String query) {
+    return searchIndex.search(query);
   }
 
   // isJSON: true if JSON, false if CSV.
+  // Parsing and deduplication in caller thread, then one batched mutation on UI thread.
   // Intended to be called in own thread.
   public void importFrom(
     boolean isJSON,
     @NonNull InputStream inputStream,
     @NonNull Supplier<Boolean> isToWrite,
     @NonNull Consumer<Boolean> callback) {
-    final boolean result = isJSON ? read(inputStream) : readCsv(inputStream);
+    final List<Radio> parsed = isJSON ? read(inputStream) : readCsv(inputStream);
+    final Map<String, Radio> batch = (parsed == null) ? null : getBatch(parsed);
     putOnUiThread(() -> {
-      callback.accept(result);
-      if (isToWrite.get()) {
-        write();
+      if (batch != null) {
+        addAllNew(batch, isToWrite.get());
       }
+      if (parsed != null) {
+        store.unpin(parsed);
+      }
+      callback.accept(batch != null);
     });
   }
 
-  // Write JSON asynchronously.
+  // Write JSON asynchronously, debounced.
   // Intended to be called in UI thread.
   public void write() {
-    final List<Radio> snapshot = new ArrayList<>(this); // on UI thread
     Log.d(LOG_TAG, "write");
-    new Thread(() -> {
-      try (final FileOutputStream fileOutputStream = new FileOutputStream(fileName)) {
-        write(snapshot, fileOutputStream, MIME_JSON);
-      } catch (IOException | JSONException exception) {
-        Log.e(LOG_TAG, "write: internal failure", exception);
-      }
-    }).start();
+    store.scheduleCompaction();
   }
 
   private void putOnUiThread(@NonNull Runnable runnable) {
     HANDLER.post(runnable);
   }
 
-  private boolean readCsv(@NonNull InputStream inputStream) {
+  // null if failed
+  @Nullable
+  private List<Radio> readCsv(@NonNull InputStream inputStream) {
     try (final BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream))) {
+      final List<Radio> result = new ArrayList<>();
       String line;
       // Skip header line
       reader.readLine();
       while ((line = reader.readLine()) != null) {
         final Radio radio = Radio.getRadioFromCsv(line);
         if (radio != null) {
-          putOnUiThread(() -> add(radio, false));
+          result.add(radio);
         }
       }
-      return true;
+      return result;
     } catch (IOException iOException) {
       Log.e(LOG_TAG, "readCsv: internal failure creating radio", iOException);
-      return false;
+      return null;
     }
   }
 
-  // Only JSON can be read
-  private boolean read(@NonNull InputStream inputStream) {
+  // Only JSON can be read; null if failed
+  @Nullable
+  private List<Radio> read(@NonNull InputStream inputStream) {
     try {
-      final Gson gson = new Gson();
-      // Define the type for the parsing
-      final Type listType = new TypeToken<List<Map<String, Object>>>() {
-      }.getType();
-      // Parse JSON file
-      try (final InputStreamReader reader = new InputStreamReader(inputStream)) {
-        final List<Map<String, Object>> jSONObjects = gson.fromJson(reader, listType);
-        for (final Map<String, Object> jSONObject : jSONObjects) {
-          try {
-            final Radio radio = new Radio(new JSONObject(jSONObject));
-            // Avoid duplicate radio
-            putOnUiThread(() -> {
-              if (stream()
-                .map(Radio::getURL)
-                .noneMatch(uRL -> radio.getURL().toString().equals(uRL.toString()))) {
-                add(radio, false);
-              }
-            });
-          } catch (JSONException jSONException) {
-            Log.e(LOG_TAG, "read: internal JSON failure", jSONException);
-          } catch (MalformedURLException malformedURLException) {
-            Log.e(LOG_TAG, "read: internal failure creating radio", malformedURLException);
-          }
-        }
-      }
-      return true;
+      return store.parse(inputStream);
     } catch (IOException iOException) {
       Log.e(LOG_TAG, "read: internal failure creating radio", iOException);
-      return false;
+      return null;
     }
   }
 
+  // Avoid duplicate radio. One notification, one write at most.
+  private void addAllNew(@NonNull Map<String, Radio> batch, boolean isToWrite) {
+    final List<Radio> newRadios = batch.entrySet().stream()
+      .filter(entry -> !uRLIndex.containsKey(entry.getKey()))
+      .map(Map.Entry::getValue)
+      .collect(Collectors.toList());
+    addAllIndexed(newRadios, isToWrite);
+  }
+
+  // One notification, one write at most
+  private void addAllIndexed(@NonNull List<Radio> newRadios, boolean isToWrite) {
+    tellListeners(
+      addAllIndexed(newRadios),
+      isToWrite ? store::scheduleCompaction : null,
+      listener -> listener.onAddAll(newRadios));
+  }
+
   private boolean add(@NonNull Radio radio, boolean isToWrite) {
-    return tellListeners(super.add(radio), isToWrite, listener -> listener.onAdd(radio));
+    final boolean result = super.add(radio);
+    if (result) {
+      index(radio, size() - 1);
+    }
+    return tellListeners(result, isToWrite ? () -> store.add(radio) : null, listener -> listener.onAdd(radio));
+  }
+
+  private boolean addAllIndexed(@NonNull Collection<? extends Radio> c) {
+    final int start = size();
+    final boolean result = super.addAll(c);
+    for (int i = start; i < size(); i++) {
+      index(get(i), i);
+    }
+    return result;
+  }
+
+  private void index(@NonNull Radio radio, int position) {
+    idIndex.put(radio.getId(), radio);
+    positions.put(radio.getId(), position);
+    indexURL(radio);
+    searchIndex.put(radio);
+    indexPreferred(radio);
+  }
+
+  // First radio wins in case of duplicate URL
+  private void indexURL(@NonNull Radio radio) {
+    final String key = normalize(radio.getURL());
+    final String previousKey = uRLKeys.put(radio.getId(), key);
+    if (!key.equals(previousKey)) {
+      unindexURL(radio, previousKey);
+      uRLIndex.putIfAbsent(key, radio);
+    }
+  }
+
+  // position: where radio was
+  private void unindex(@NonNull Radio radio, int position) {
+    idIndex.remove(radio.getId());
+    positions.remove(radio.getId());
+    unindexURL(radio, uRLKeys.remove(radio.getId()));
+    searchIndex.remove(radio);
+    unindexPreferred(radio);
+    // Following radios have moved
+    for (int i = position; i < size(); i++) {
+      positions.put(get(i).getId(), i);
+    }
+  }
+
+  // Sets preferred membership from radio flag; radio must be indexed.
+  // Returns true if membership changed.
+  private boolean indexPreferred(@NonNull Radio radio) {
+    final boolean isIn = preferredPositions.containsKey(radio.getId());
+    if (radio.isPreferred() == isIn) {
+      return false;
+    }
+    if (isIn) {
+      unindexPreferred(radio);
+    } else {
+      // Binary search by position in radios
+      final int position = getPosition(radio);
+      int low = 0;
+      int high = preferredRadios.size();
+      while (low < high) {
+        final int middle = (low + high) >>> 1;
+        if (getPosition(preferredRadios.get(middle)) < position) {
+          low = middle + 1;
+        } else {
+          high = middle;
+        }
+      }
+      preferredRadios.add(low, radio);
+      setPreferredPositions(low);
+    }
+    return true;
+  }
+
+  private void unindexPreferred(@NonNull Radio radio) {
+    final Integer position = preferredPositions.remove(radio.getId());
+    if (position != null) {
+      preferredRadios.remove((int) position);
+      setPreferredPositions(position);
+    }
+  }
+
+  private void setPreferredPositions(int from) {
+    for (int i = from; i < preferredRadios.size(); i++) {
+      preferredPositions.put(preferredRadios.get(i).getId(), i);
+    }
+  }
+
+  private int getPosition(@NonNull Radio radio) {
+    final Integer position = positions.get(radio.getId());
+    return (position == null) ? -1 : position;
+  }
+
+  private void unindexURL(@NonNull Radio radio, @Nullable String key) {
+    if ((key != null) && uRLIndex.remove(key, radio)) {
+      // Duplicate, if any, takes over
+      stream()
+        .filter(other -> key.equals(uRLKeys.get(other.getId())))
+        .findFirst()
+        .ifPresent(other -> uRLIndex.put(key, other));
+    }
   }
 
-  private boolean tellListeners(boolean test, boolean isToWrite, @NonNull Consumer<Listener> consumer) {
+  // toStore: persistence of the change, if any
+  private boolean tellListeners(boolean test, @Nullable Runnable toStore, @NonNull Consumer<Listener> consumer) {
     if (test) {
       new ArrayList<>(listeners).forEach(consumer); // Safe way for listeners.forEach(consumer)
-      if (isToWrite) {
-        // Snapshot on UI thread to avoid concurrent access
-        write();
+      if (toStore != null) {
+        // Journal entry built on UI thread to avoid concurrent access
+        toStore.run();
       }
     }
     return test;
   }
 
+  // Preferred radios, in radios order
+  private class PreferredView extends AbstractList<Radio> implements RandomAccess {
+    @Override
+    public Radio get(int index) {
+      return preferredRadios.get(index);
+    }
+
+    @Override
+    public int size() {
+      return preferredRadios.size();
+    }
+
+    @Override
+    public int indexOf(@Nullable Object o) {
+      if (o instanceof Radio) {
+        final Integer position = preferredPositions.get(((Radio) o).getId());
+        if ((position != null) && (preferredRadios.get(position) == o)) {
+          return position;
+        }
+      }
+      return -1;
+    }
+  }
+
   public interface Listener {
     default void onChange(@NonNull Radio radio) {
     }
@@ -400,6 +647,14 @@ public class Radios extends ArrayList<Radio> {
     default void onPreferredChange() {
     }
 
+    // Icon has been decoded, radio is otherwise unchanged
+    default void onIconChange(@NonNull Radio radio) {
+    }
+
+    // Icon is now in store, see Radio.getStoredIconKey()
+    default void onIconStored(@NonNull Radio radio) {
+    }
+
     default void onInitEnd() {
     }
   }
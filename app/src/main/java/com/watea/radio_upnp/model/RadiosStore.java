@@ -0,0 +1,388 @@
+/*
+ * Copyright (c) 2026. Stephane Treuchot
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to
+ * do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.watea.radio_upnp.model;
+
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+// Radios persistence: a compact snapshot plus an append-only journal of changes.
+// Snapshot (index) holds radio metadata only, so that it loads in one fast pass;
+// icons are held by IconStore and decoded on demand.
+// Journal entries are keyed by radio ID and idempotent, so they can be replayed
+// over any snapshot at least as old as them.
+// All I/O runs on a single writer thread, in submission order.
+// All public methods must be called from UI thread, if not otherwise specified.
+class RadiosStore {
+  private static final String LOG_TAG = RadiosStore.class.getSimpleName();
+  private static final String INDEX_EXTENSION = ".index";
+  private static final String ICONS_EXTENSION = ".icons";
+  private static final String JOURNAL_EXTENSION = ".journal";
+  private static final String TEMP_EXTENSION = ".tmp";
+  private static final String CR = "\n";
+  private static final String OP = "op";
+  private static final String OP_ADD = "add";
+  private static final String OP_CHANGE = "change";
+  private static final String OP_REMOVE = "remove";
+  private static final String OP_PREFERRED = "preferred";
+  private static final String ID = "id";
+  private static final String RADIO = "radio";
+  private static final String VALUE = "value";
+  private static final int COMPACTION_DELAY_MS = 2000;
+  private static final int MAX_JOURNAL_ENTRIES = 64;
+  // Version 1: metadata and icon key
+  private static final int INDEX_VERSION = 1;
+  private static final Handler HANDLER = new Handler(Looper.getMainLooper());
+  @NonNull
+  private final ExecutorService writer = Executors.newSingleThreadExecutor();
+  @NonNull
+  private final IconStore iconStore;
+  // Former full JSON snapshot, icons included; migrated at first compaction
+  @NonNull
+  private final File legacyFile;
+  @NonNull
+  private final File indexFile;
+  @NonNull
+  private final File journalFile;
+  @NonNull
+  private final File tempFile;
+  @NonNull
+  private final Supplier<List<Radio>> snapshotSupplier;
+  @NonNull
+  private final Consumer<Radio> onIconStored;
+  @NonNull
+  private final Runnable compaction = this::compact;
+  private int journalEntries = 0;
+  private boolean isMigrationDue = false;
+
+  // snapshotSupplier is called on UI thread and shall return a copy.
+  // memoryClass: in MB, as given by ActivityManager.
+  // onIconDecoded and onIconStored are called on UI thread.
+  RadiosStore(
+    @NonNull String fileName,
+    int memoryClass,
+    @NonNull Supplier<List<Radio>> snapshotSupplier,
+    @NonNull Consumer<Radio> onIconDecoded,
+    @NonNull Consumer<Radio> onIconStored) {
+    iconStore = new IconStore(getIconDirectory(fileName), memoryClass, onIconDecoded);
+    legacyFile = new File(fileName);
+    indexFile = new File(fileName + INDEX_EXTENSION);
+    journalFile = new File(fileName + JOURNAL_EXTENSION);
+    tempFile = new File(fileName + TEMP_EXTENSION);
+    this.snapshotSupplier = snapshotSupplier;
+    this.onIconStored = onIconStored;
+  }
+
+
+  @NonNull
+  static File getIconDirectory(@NonNull String fileName) {
+    return new File(fileName + ICONS_EXTENSION);
+  }
+
+  private static int indexOf(@NonNull List<Radio> radios, @NonNull String id) {
+    for (int i = 0; i < radios.size(); i++) {
+      if (radios.get(i).getId().equals(id)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private void replay(@NonNull List<Radio> radios, @NonNull JSONObject entry)
+    throws JSONException, MalformedURLException {
+    switch (entry.getString(OP)) {
+      case OP_ADD:
+      case OP_CHANGE:
+        final Radio radio = new Radio(entry.getJSONObject(RADIO), iconStore);
+        final int index = indexOf(radios, radio.getId());
+        if (index < 0) {
+          radios.add(radio);
+        } else {
+          radios.set(index, radio);
+        }
+        break;
+      case OP_REMOVE:
+        final int removed = indexOf(radios, entry.getString(ID));
+        if (removed >= 0) {
+          radios.remove(removed);
+        }
+        break;
+      case OP_PREFERRED:
+        final int preferred = indexOf(radios, entry.getString(ID));
+        if (preferred >= 0) {
+          radios.get(preferred).setIsPreferred(entry.getBoolean(VALUE));
+        }
+        break;
+      default:
+        Log.w(LOG_TAG, "replay: unknown entry " + entry.getString(OP));
+    }
+  }
+
+  // Snapshot with journal replayed over it.
+  // Intended to be called in own thread, before any other call.
+  @NonNull
+  List<Radio> load() throws IOException {
+    final List<Radio> result = readSnapshot();
+    if (journalFile.exists()) {
+      try (final BufferedReader reader = new BufferedReader(new FileReader(journalFile))) {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          try {
+            replay(result, new JSONObject(line));
+            journalEntries++;
+          } catch (JSONException | MalformedURLException exception) {
+            // Torn tail after a crash: anything beyond is lost anyway.
+            // Counted, so that compaction gets rid of it.
+            Log.w(LOG_TAG, "load: journal entry dropped", exception);
+            journalEntries++;
+            break;
+          }
+        }
+      }
+    }
+    Log.d(LOG_TAG, "load: " + result.size() + " radios, " + journalEntries + " journal entries");
+    return result;
+  }
+
+  // JSON with inline icons: each icon is written to store while parsing, only keys are held.
+  // Icons are pinned until unpin().
+  // Intended to be called in own thread.
+  @NonNull
+  List<Radio> parse(@NonNull InputStream inputStream) throws IOException {
+    return Radios.parse(inputStream, iconStore);
+  }
+
+  // To be called once parsed radios are part of the list, or dropped.
+  // On writer thread: any compaction queued before has retained their icons,
+  // any queued after references them.
+  void unpin(@NonNull List<Radio> radios) {
+    writer.execute(() -> radios.forEach(radio -> {
+      final String key = radio.getStoredIconKey();
+      if (key != null) {
+        iconStore.unpin(key);
+      }
+    }));
+  }
+
+  // True if load found journal entries or legacy snapshot
+  boolean isCompactionDue() {
+    return isMigrationDue || (journalEntries > 0);
+  }
+
+  void add(@NonNull Radio radio) {
+    append(OP_ADD, radio);
+  }
+
+  void change(@NonNull Radio radio) {
+    append(OP_CHANGE, radio);
+  }
+
+  void remove(@NonNull Radio radio) {
+    append(OP_REMOVE, radio.getId(), null);
+  }
+
+  void setPreferred(@NonNull Radio radio) {
+    append(OP_PREFERRED, radio.getId(), radio.isPreferred());
+  }
+
+  // Full snapshot rewrite, debounced
+  void scheduleCompaction() {
+    HANDLER.removeCallbacks(compaction);
+    HANDLER.postDelayed(compaction, COMPACTION_DELAY_MS);
+  }
+
+  @NonNull
+  private List<Radio> readSnapshot() throws IOException {
+    if (indexFile.exists()) {
+      try (final DataInputStream dataInputStream =
+             new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+        final int version = dataInputStream.readInt();
+        if (version > INDEX_VERSION) {
+          throw new IOException("Unknown index version");
+        }
+        final int size = dataInputStream.readInt();
+        final List<Radio> result = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+          result.add(new Radio(dataInputStream, iconStore));
+        }
+        return result;
+      }
+    }
+    try (final FileInputStream fileInputStream = new FileInputStream(legacyFile)) {
+      // Slow path, once: icons are moved to store here
+      isMigrationDue = true;
+      final List<Radio> result = parse(fileInputStream);
+      // No compaction before load
+      unpin(result);
+      return result;
+    } catch (FileNotFoundException fileNotFoundException) {
+      // Crash before first compaction; journal may still hold the radios
+      Log.d(LOG_TAG, "readSnapshot: no snapshot");
+      return new ArrayList<>();
+    }
+  }
+
+  // Icon, if new, is written before the entry referencing it
+  private void append(@NonNull String op, @NonNull Radio radio) {
+    final Bitmap icon = radio.takeIconToStore(iconStore);
+    try {
+      final JSONObject metadata = radio.getMetadataJSONObject();
+      if (icon != null) {
+        writer.execute(() -> {
+          final String key = iconStore.write(icon);
+          if (key != null) {
+            store(radio, icon, key);
+            try {
+              Radio.setIconKey(metadata, key);
+            } catch (JSONException jSONException) {
+              Log.e(LOG_TAG, "append: internal failure", jSONException);
+            }
+          }
+        });
+      }
+      journal(new JSONObject().put(OP, op).put(RADIO, metadata));
+    } catch (JSONException jSONException) {
+      Log.e(LOG_TAG, "append: internal failure", jSONException);
+    }
+  }
+
+  private void append(@NonNull String op, @NonNull String id, @Nullable Boolean value) {
+    try {
+      final JSONObject entry = new JSONObject().put(OP, op).put(ID, id);
+      journal((value == null) ? entry : entry.put(VALUE, value));
+    } catch (JSONException jSONException) {
+      Log.e(LOG_TAG, "append: internal failure", jSONException);
+    }
+  }
+
+  // entry is serialized in writer thread, once any new icon key is known
+  private void journal(@NonNull JSONObject entry) {
+    writer.execute(() -> {
+      try (final FileOutputStream fileOutputStream = new FileOutputStream(journalFile, true)) {
+        fileOutputStream.write((entry + CR).getBytes());
+      } catch (IOException iOException) {
+        Log.e(LOG_TAG, "journal: internal failure", iOException);
+      }
+    });
+    if (++journalEntries >= MAX_JOURNAL_ENTRIES) {
+      scheduleCompaction();
+    }
+  }
+
+  // On writer thread; icon is then available by key
+  private void store(@NonNull Radio radio, @NonNull Bitmap icon, @NonNull String key) {
+    if (radio.onIconStored(icon, key)) {
+      HANDLER.post(() -> onIconStored.accept(radio));
+    }
+  }
+
+  // Snapshot is taken here, on UI thread: journal entries queued before it are
+  // covered by the snapshot, those queued after it run after the journal reset
+  private void compact() {
+    final List<Radio> snapshot = snapshotSupplier.get();
+    final Map<Radio, Bitmap> icons = new HashMap<>();
+    for (final Radio radio : snapshot) {
+      final Bitmap icon = radio.takeIconToStore(iconStore);
+      if (icon != null) {
+        icons.put(radio, icon);
+      }
+    }
+    journalEntries = 0;
+    isMigrationDue = false;
+    writer.execute(() -> {
+      // Icons first: index shall not reference missing icons
+      icons.forEach((radio, icon) -> {
+        final String key = iconStore.write(icon);
+        if (key != null) {
+          store(radio, icon, key);
+        }
+      });
+      final Set<String> keys = new HashSet<>();
+      try (final FileOutputStream fileOutputStream = new FileOutputStream(tempFile)) {
+        final DataOutputStream dataOutputStream =
+          new DataOutputStream(new BufferedOutputStream(fileOutputStream));
+        dataOutputStream.writeInt(INDEX_VERSION);
+        dataOutputStream.writeInt(snapshot.size());
+        for (final Radio radio : snapshot) {
+          radio.writeTo(dataOutputStream);
+          final String key = radio.getIconKey();
+          if (key != null) {
+            keys.add(key);
+          }
+        }
+        dataOutputStream.flush();
+        fileOutputStream.getFD().sync();
+      } catch (IOException iOException) {
+        Log.e(LOG_TAG, "compact: internal failure", iOException);
+        return;
+      }
+      // Atomic: readers see either the old or the new snapshot, never a partial one
+      if (!tempFile.renameTo(indexFile)) {
+        Log.e(LOG_TAG, "compact: unable to rename snapshot");
+        return;
+      }
+      // Snapshot now covers the journal; a crash before this is harmless (idempotent replay)
+      if (journalFile.exists() && !journalFile.delete()) {
+        Log.e(LOG_TAG, "compact: unable to reset journal");
+      }
+      if (legacyFile.exists() && !legacyFile.delete()) {
+        Log.e(LOG_TAG, "compact: unable to remove legacy snapshot");
+      }
+      // Icons of removed radios; shared icons are kept while referenced
+      iconStore.retain(keys);
+      Log.d(LOG_TAG, "compact: " + snapshot.size() + " radios written");
+    });
+  }
+}
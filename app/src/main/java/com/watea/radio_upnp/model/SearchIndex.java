@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) 2026. Stephane Treuchot
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to
+ * do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.watea.radio_upnp.model;
+
+import androidx.annotation.NonNull;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.ToIntFunction;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+// Fuzzy radio name search: inverted index of name token trigrams, candidates scored by
+// edit distance. Accents, case, punctuation and word order are not significant.
+// Must be called from UI thread.
+class SearchIndex {
+  private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+  private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+  private static final char BOUNDARY = '$';
+  private static final int GRAM = 3;
+  private static final int MIN_PREFIX = 2;
+  private static final float PREFIX_SCORE = 0.9f;
+  private static final float MIN_SCORE = 0.6f;
+  // Penalty per radio name token not asked for, so that closest names come first
+  private static final float EXTRA_TOKEN_PENALTY = 0.02f;
+  private final Map<String, Set<Radio>> postings = new HashMap<>();
+  private final Map<Radio, String[]> tokens = new HashMap<>();
+  // Ties are broken by library position, so that results are stable
+  @NonNull
+  private final ToIntFunction<Radio> positions;
+
+  SearchIndex(@NonNull ToIntFunction<Radio> positions) {
+    this.positions = positions;
+  }
+
+  @NonNull
+  private static String[] tokenize(@NonNull String text) {
+    final String normalized = MARKS
+      .matcher(Normalizer.normalize(text, Normalizer.Form.NFD))
+      .replaceAll("")
+      .toLowerCase(Locale.ROOT);
+    return Arrays.stream(SEPARATORS.split(normalized)).filter(token -> !token.isEmpty()).toArray(String[]::new);
+  }
+
+  // "france inter" and "franceinter" shall meet
+  @NonNull
+  private static String join(@NonNull String[] tokens) {
+    return String.join("", tokens);
+  }
+
+  @NonNull
+  private static Set<String> getGrams(@NonNull String token) {
+    final String bounded = BOUNDARY + token + BOUNDARY;
+    final Set<String> result = new HashSet<>();
+    for (int i = 0; i + GRAM <= bounded.length(); i++) {
+      result.add(bounded.substring(i, i + GRAM));
+    }
+    return result;
+  }
+
+  // Grams of tokens and of their junction
+  @NonNull
+  private static Set<String> getGrams(@NonNull String[] tokens) {
+    final Set<String> result = new HashSet<>();
+    for (final String token : tokens) {
+      result.addAll(getGrams(token));
+    }
+    if (tokens.length > 1) {
+      result.addAll(getGrams(join(tokens)));
+    }
+    return result;
+  }
+
+  private static int getDistance(@NonNull String a, @NonNull String b) {
+    int[] previous = new int[b.length() + 1];
+    int[] current = new int[b.length() + 1];
+    for (int j = 0; j <= b.length(); j++) {
+      previous[j] = j;
+    }
+    for (int i = 1; i <= a.length(); i++) {
+      current[0] = i;
+      for (int j = 1; j <= b.length(); j++) {
+        final int cost = (a.charAt(i - 1) == b.charAt(j - 1)) ? 0 : 1;
+        current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+      }
+      final int[] swap = previous;
+      previous = current;
+      current = swap;
+    }
+    return previous[b.length()];
+  }
+
+  // 1 for equal tokens, 0 for nothing in common
+  private static float getSimilarity(@NonNull String query, @NonNull String token) {
+    final float result = 1f - (float) getDistance(query, token) / Math.max(query.length(), token.length());
+    return ((query.length() >= MIN_PREFIX) && token.startsWith(query)) ? Math.max(result, PREFIX_SCORE) : result;
+  }
+
+  private static float getScore(@NonNull String[] queryTokens, @NonNull String[] radioTokens) {
+    if (radioTokens.length == 0) {
+      return 0f;
+    }
+    float sum = 0f;
+    for (final String queryToken : queryTokens) {
+      float best = 0f;
+      for (final String radioToken : radioTokens) {
+        best = Math.max(best, getSimilarity(queryToken, radioToken));
+      }
+      sum += best;
+    }
+    final float byToken = sum / queryTokens.length;
+    final float joined = getSimilarity(join(queryTokens), join(radioTokens));
+    return Math.max(byToken, joined) -
+      EXTRA_TOKEN_PENALTY * Math.max(0, radioTokens.length - queryTokens.length);
+  }
+
+  // Also to be called when radio name changes
+  void put(@NonNull Radio radio) {
+    remove(radio);
+    final String[] radioTokens = tokenize(radio.getName());
+    tokens.put(radio, radioTokens);
+    for (final String gram : getGrams(radioTokens)) {
+      postings.computeIfAbsent(gram, key -> new HashSet<>()).add(radio);
+    }
+  }
+
+  void remove(@NonNull Radio radio) {
+    final String[] radioTokens = tokens.remove(radio);
+    if (radioTokens != null) {
+      for (final String gram : getGrams(radioTokens)) {
+        final Set<Radio> radios = postings.get(gram);
+        if (radios != null) {
+          radios.remove(radio);
+          if (radios.isEmpty()) {
+            postings.remove(gram);
+          }
+        }
+      }
+    }
+  }
+
+  // Best first; empty if nothing close enough
+  @NonNull
+  List<Radio> search(@NonNull String query) {
+    final String[] queryTokens = tokenize(query);
+    if (queryTokens.length == 0) {
+      return new ArrayList<>();
+    }
+    // Candidates: radios sharing at least one gram with query
+    final Set<Radio> candidates = new HashSet<>();
+    for (final String gram : getGrams(queryTokens)) {
+      final Set<Radio> radios = postings.get(gram);
+      if (radios != null) {
+        candidates.addAll(radios);
+      }
+    }
+    final Map<Radio, Float> scores = new HashMap<>();
+    for (final Radio radio : candidates) {
+      final String[] radioTokens = tokens.get(radio);
+      if (radioTokens != null) {
+        final float score = getScore(queryTokens, radioTokens);
+        if (score >= MIN_SCORE) {
+          scores.put(radio, score);
+        }
+      }
+    }
+    return scores.entrySet().stream()
+      .sorted(Map.Entry.<Radio, Float>comparingByValue(Comparator.reverseOrder())
+        .thenComparingInt(entry -> positions.applyAsInt(entry.getKey())))
+      .map(Map.Entry::getKey)
+      .collect(Collectors.toList());
+  }
+}
@@ -41,19 +41,27 @@ import com.watea.androidssdpclient.SsdpClient;
 import com.watea.androidssdpclient.SsdpService;
 import com.watea.radio_upnp.R;
 import com.watea.radio_upnp.upnp.Device;
+import com.watea.radio_upnp.upnp.EventController;
 import com.watea.radio_upnp.upnp.RequestController;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArraySet;
-import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -65,6 +73,8 @@ public class AndroidUpnpService extends android.app.Service implements SsdpClien
   // s, max time to wait for a device HTTP description fetch before giving up
   // => device HTTP description fetch may be slow on some renderers at startup
   private static final long DEVICE_FETCH_TIMEOUT_S = 20L;
+  // Restored devices not answering within this delay are evicted
+  private static final long DEVICE_VERIFY_TIMEOUT_S = 3L;
   private final NetworkRequest networkRequest = new NetworkRequest.Builder()
     .addCapability(NetworkCapabilities.NET_CAPABILITY_NOT_VPN) // Not a VPN
     .addCapability(NetworkCapabilities.NET_CAPABILITY_VALIDATED) // Validated
@@ -72,15 +82,19 @@ public class AndroidUpnpService extends android.app.Service implements SsdpClien
     .build();
   private final Binder binder = new UpnpService();
   private final RequestController requestController = new RequestController();
+  private final EventController eventController = new EventController();
   private final Devices devices = new Devices();
   // CopyOnWriteArraySet ensures thread-safe iteration and modification:
   // listener notifications are dispatched from background threads while
   // add/remove can happen from binder threads concurrently
   private final Set<Listener> listeners = new CopyOnWriteArraySet<>();
   private final ExecutorService deviceExecutor = Executors.newCachedThreadPool(); // Bounded executor for device HTTP fetches — prevents unbounded raw thread creation
+  // Fetch timeouts, no thread is blocked waiting for a fetch
+  private final ScheduledExecutorService timeoutExecutor = Executors.newSingleThreadScheduledExecutor();
   private final ConnectivityManager.NetworkCallback networkCallback = new NetworkCallback();
   private ConnectivityManager connectivityManager;
   private NetworkProxy networkProxy;
+  private DeviceSnapshot deviceSnapshot;
   private SsdpClient ssdpClient;
   private volatile boolean isDestroyed = false;
 
@@ -89,9 +103,11 @@ public class AndroidUpnpService extends android.app.Service implements SsdpClien
     super.onCreate();
     // Order matters
     networkProxy = new NetworkProxy(AndroidUpnpService.this);
+    deviceSnapshot = new DeviceSnapshot(this);
     ssdpClient = new SsdpClient(this, DEVICE + DEVICE_VERSION, this);
     connectivityManager = (ConnectivityManager) getSystemService(Context.CONNECTIVITY_SERVICE);
     connectivityManager.registerNetworkCallback(networkRequest, networkCallback);
+    eventController.start();
   }
 
   @Override
@@ -106,6 +122,8 @@ public class AndroidUpnpService extends android.app.Service implements SsdpClien
     ssdpClient.stop();
     // Shut down the device fetch executor
     deviceExecutor.shutdownNow();
+    timeoutExecutor.shutdownNow();
+    eventController.stop();
   }
 
   @Override
@@ -135,7 +153,7 @@ public class AndroidUpnpService extends android.app.Service implements SsdpClien
   @Override
   public void onStop() {
     Log.d(LOG_TAG, "onStop");
-    devices.forEach(this::tellRemoveListeners);
+    devices.getDevices().forEach(this::tellRemoveListeners);
     devices.clear();
     // If we missed the onAvailable() because the client was still started
     if (!isDestroyed && networkProxy.isOnWifi()) {
@@ -143,6 +161,79 @@ public class AndroidUpnpService extends android.app.Service implements SsdpClien
     }
   }
 
+  // Known devices are available at once, then confirmed by unicast fetch
+  private void restoreDevices() {
+    try {
+      deviceExecutor.execute(() -> deviceSnapshot.restore().forEach(device -> {
+        if (devices.addRestored(device)) {
+          verify(device);
+        }
+      }));
+    } catch (RejectedExecutionException rejectedExecutionException) {
+      Log.d(LOG_TAG, "restoreDevices: service is destroyed");
+    }
+  }
+
+  // Unicast fetch of description, in parallel for all restored devices
+  private void verify(@NonNull Device restoredDevice) {
+    final String uUID = restoredDevice.getUUID();
+    if (uUID != null) {
+      fetch(
+        () -> new Device(restoredDevice.getLocation(), uUID, false),
+        DEVICE_VERIFY_TIMEOUT_S,
+        device -> {
+          if ((device == null) || device.isOnError() || !device.hasUUID(uUID)) {
+            devices.evict(restoredDevice);
+          } else {
+            devices.replace(restoredDevice, device);
+          }
+        });
+    }
+  }
+
+  // Asynchronous fetch, bounded by timeout without any waiting thread.
+  // consumer is called once, with null on failure or timeout.
+  private void fetch(
+    @NonNull Callable<Device> fetcher,
+    long timeoutS,
+    @NonNull Consumer<Device> consumer) {
+    final AtomicBoolean isDone = new AtomicBoolean(false);
+    try {
+      final Future<?> future = deviceExecutor.submit(() -> {
+        Device device = null;
+        try {
+          device = fetcher.call();
+        } catch (Exception exception) {
+          Log.d(LOG_TAG, "fetch: failed", exception);
+        }
+        if (isDone.compareAndSet(false, true)) {
+          consumer.accept(device);
+        }
+      });
+      timeoutExecutor.schedule(() -> {
+        if (isDone.compareAndSet(false, true)) {
+          Log.w(LOG_TAG, "fetch: timeout");
+          future.cancel(true);
+          consumer.accept(null);
+        }
+      }, timeoutS, TimeUnit.SECONDS);
+    } catch (RejectedExecutionException rejectedExecutionException) {
+      // Service is destroyed
+      if (isDone.compareAndSet(false, true)) {
+        consumer.accept(null);
+      }
+    }
+  }
+
+  private void writeSnapshot() {
+    final List<Device> snapshot = devices.getSnapshot();
+    try {
+      deviceExecutor.execute(() -> deviceSnapshot.write(snapshot));
+    } catch (RejectedExecutionException rejectedExecutionException) {
+      Log.d(LOG_TAG, "writeSnapshot: service is destroyed");
+    }
+  }
+
   private void tellRemoveListeners(@NonNull Device device) {
     // Pre-capture embedded devices while the set is still populated
     final List<Device> embedded = devices.getEmbeddedDevicesStream(device).collect(Collectors.toList());
@@ -173,6 +264,9 @@ public class AndroidUpnpService extends android.app.Service implements SsdpClien
 
     default void onSelectedDeviceChange(@Nullable Device previousDevice, @Nullable Device device) {
     }
+
+    default void onGroupedDeviceChange(@NonNull Device device) {
+    }
   }
 
   public class UpnpService extends android.os.Binder {
@@ -181,6 +275,11 @@ public class AndroidUpnpService extends android.app.Service implements SsdpClien
       return requestController;
     }
 
+    @NonNull
+    public EventController getEventController() {
+      return eventController;
+    }
+
     public void addListener(@NonNull Listener listener) {
       devices.addListener(listener);
     }
@@ -210,6 +309,47 @@ public class AndroidUpnpService extends android.app.Service implements SsdpClien
       return ((result == null) || result.isAlive()) ? result : null;
     }
 
+    // Multi-room: grouped devices play along with selected device
+    public void setGroupedDeviceIdentity(@NonNull String deviceIdentity, boolean isGrouped) {
+      final SharedPreferences sharedPreferences = getSharedPreferences(getString(R.string.app_name), Context.MODE_PRIVATE);
+      final Set<String> groupedDeviceIdentities = new HashSet<>(getGroupedDeviceIdentities(sharedPreferences));
+      if (isGrouped ? groupedDeviceIdentities.add(deviceIdentity) : groupedDeviceIdentities.remove(deviceIdentity)) {
+        sharedPreferences.edit().putStringSet(getString(R.string.key_grouped_devices), groupedDeviceIdentities).apply();
+        final Device device = devices.get(deviceIdentity);
+        if (device != null) {
+          listeners.forEach(listener -> listener.onGroupedDeviceChange(device));
+        }
+      }
+    }
+
+    public boolean isGrouped(@NonNull Device device) {
+      final String uUID = device.getUUID();
+      return (uUID != null) &&
+        getGroupedDeviceIdentities(getSharedPreferences(getString(R.string.app_name), Context.MODE_PRIVATE)).contains(uUID);
+    }
+
+    // Active selected device first, then active grouped devices; empty if no device is selected
+    @NonNull
+    public List<Device> getActiveSelectedDevices() {
+      final Device selectedDevice = getActiveSelectedDevice();
+      if (selectedDevice == null) {
+        return Collections.emptyList();
+      }
+      final List<Device> result = new ArrayList<>();
+      result.add(selectedDevice);
+      getGroupedDeviceIdentities(getSharedPreferences(getString(R.string.app_name), Context.MODE_PRIVATE)).stream()
+        .map(devices::get)
+        .filter(device -> (device != null) && device.isAlive() && !device.equals(selectedDevice))
+        .forEach(result::add);
+      return result;
+    }
+
+    @NonNull
+    private Set<String> getGroupedDeviceIdentities(@NonNull SharedPreferences sharedPreferences) {
+      final Set<String> result = sharedPreferences.getStringSet(getString(R.string.key_grouped_devices), null);
+      return (result == null) ? Collections.emptySet() : result;
+    }
+
     private void tellSelectedDeviceIdentity(@Nullable Device previousDevice) {
       listeners.forEach(listener -> listener.onSelectedDeviceChange(previousDevice, getSelectedDevice()));
     }
@@ -221,6 +361,7 @@ public class AndroidUpnpService extends android.app.Service implements SsdpClien
       final NetworkCapabilities cap = connectivityManager.getNetworkCapabilities(network);
       if (!ssdpClient.isStarted() && (cap != null) && cap.hasTransport(NetworkCapabilities.TRANSPORT_WIFI)) {
         devices.clear();
+        restoreDevices();
         ssdpClient.start();
       }
     }
@@ -233,18 +374,52 @@ public class AndroidUpnpService extends android.app.Service implements SsdpClien
     }
   }
 
-  private class Devices extends HashSet<Device> {
-    // Tracks UUIDs currently being fetched to prevent duplicate Device
-    // construction when two SSDP announcements for the same UUID arrive in quick succession
-    private final Set<String> pendingUUIDs = new HashSet<>();
+  // Devices by UUID, each with its discovery state.
+  // SSDP announcements of known devices only update state, without lock.
+  private class Devices {
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
 
-    // Adds device if it has the expected device type and is not already known
-    @Override
-    public synchronized boolean add(Device device) {
-      final boolean added = !device.isOnError() &&
+    @NonNull
+    private State getState(@NonNull SsdpService.Status status) {
+      switch (status) {
+        case BYEBYE:
+          return State.BYEBYE;
+        case EXPIRED:
+          return State.EXPIRED;
+        default:
+          return State.ALIVE;
+      }
+    }
+
+    @Nullable
+    public Device get(@NonNull String uUID) {
+      final Entry entry = entries.get(uUID);
+      return (entry == null) ? null : entry.device;
+    }
+
+    @NonNull
+    public List<Device> getDevices() {
+      return entries.values().stream()
+        .map(entry -> entry.device)
+        .filter(Objects::nonNull)
+        .collect(Collectors.toList());
+    }
+
+    public void clear() {
+      entries.clear();
+    }
+
+    // Adds device if it has the expected device type and its UUID is not already known.
+    // Synchronized with addListener() so that no listener misses a device.
+    public synchronized boolean add(@NonNull Device device) {
+      final String uUID = device.getUUID();
+      final Entry newEntry = new Entry(device.isAlive() ? State.ALIVE : State.BYEBYE, device);
+      final boolean added = (uUID != null) &&
+        !device.isOnError() &&
         device.getDeviceType().startsWith(DEVICE) &&
         (device.getShortService(AV_TRANSPORT_SERVICE_ID) != null) &&
-        super.add(device);
+        // Replaces pending entry, if any
+        (entries.merge(uUID, newEntry, (entry, value) -> (entry.device == null) ? value : entry) == newEntry);
       if (added) {
         Log.d(LOG_TAG, "Device added: " + device.getDisplayString() + " => " + device.isAlive());
         if (device.isAlive()) {
@@ -254,87 +429,150 @@ public class AndroidUpnpService extends android.app.Service implements SsdpClien
       return added;
     }
 
-    @Nullable
-    public synchronized Device get(@NonNull String uUID) {
-      return stream().filter(device -> device.hasUUID(uUID)).findFirst().orElse(null);
-    }
-
-    public synchronized void process(@NonNull SsdpService service) {
+    public void process(@NonNull SsdpService service) {
       final String uUID = Device.getUUID(service);
-      final Device knownDevice = (uUID == null) ? null : get(uUID);
-      final SsdpService.Status status = service.getStatus();
-      final boolean isAlive = Device.isAlive(status);
-      if (knownDevice == null) {
-        // Skip BYEBYE/EXPIRED announcements for unknown devices — location is null
-        // and there is nothing useful to fetch
-        if (!isAlive) {
-          return;
+      if (uUID == null) {
+        Log.d(LOG_TAG, "process: no UUID for " + service);
+        return;
+      }
+      final State state = getState(service.getStatus());
+      final Entry[] previous = new Entry[1];
+      final Entry current = entries.compute(uUID, (key, entry) -> {
+        previous[0] = entry;
+        if (entry == null) {
+          // Skip BYEBYE/EXPIRED announcements for unknown devices — location is null
+          // and there is nothing useful to fetch
+          return (state == State.ALIVE) ? new Entry(State.PENDING, null) : null;
         }
-        // Skip if this UUID is already being fetched asynchronously —
-        // prevents duplicate Device objects from concurrent SSDP announcements
-        if (!pendingUUIDs.add(uUID)) {
-          Log.d(LOG_TAG, "Device fetch already in progress for UUID: " + uUID);
-          return;
+        // Fetch in progress or no change
+        return ((entry.state == State.PENDING) || (entry.state == state)) ? entry : new Entry(state, entry.device);
+      });
+      if (previous[0] == null) {
+        if (current != null) {
+          fetch(current, uUID, service);
         }
-        // Submit the blocking HTTP fetch to the bounded executor and
-        // enforce a timeout via a second executor task to avoid hanging threads
-        // RejectedExecutionException can occur if the executor is shut down while
-        // an SSDP event is still being delivered (race between onDestroy and SsdpClient thread)
-        final Future<Device> future;
-        try {
-          future = deviceExecutor.submit(() -> new Device(service));
-        } catch (RejectedExecutionException ignored) {
-          pendingUUIDs.remove(uUID);
-          return;
-        }
-        try {
-          deviceExecutor.execute(() -> {
-            try {
-              final Device device = future.get(DEVICE_FETCH_TIMEOUT_S, TimeUnit.SECONDS);
-              final Set<Device> embeddedDevices = device.getEmbeddedDevices();
-              Log.d(LOG_TAG, "Device found (embedded: " + embeddedDevices.size() + ", onError: " + device.isOnError() + "): " + device.getDisplayString());
-              add(device);
-              addAll(embeddedDevices);
-            } catch (TimeoutException timeoutException) {
-              Log.w(LOG_TAG, "Device fetch timed out: " + service);
-              future.cancel(true);
-            } catch (ExecutionException executionException) {
-              Log.e(LOG_TAG, "process: add device failed", executionException.getCause());
-            } catch (InterruptedException interruptedException) {
-              Thread.currentThread().interrupt();
-            } finally {
-              // Always release the pending guard, even on failure, so
-              // subsequent announcements for this UUID are not permanently blocked
-              if (uUID != null) {
-                synchronized (Devices.this) {
-                  pendingUUIDs.remove(uUID);
-                }
-              }
-            }
-          });
-        } catch (RejectedExecutionException ignored) {
-          future.cancel(true);
-          pendingUUIDs.remove(uUID);
-        }
-      } else if (knownDevice.isAlive() != isAlive) {
-        Log.d(LOG_TAG, "Device announcement: " + knownDevice.getDisplayString() + " => " + status);
-        knownDevice.setAlive(isAlive);
-        if (isAlive) {
-          tellAddListeners(knownDevice);
-        } else {
-          tellRemoveListeners(knownDevice);
+      } else if (current != previous[0]) {
+        final Device knownDevice = current.device;
+        final boolean isAlive = (state == State.ALIVE);
+        if ((knownDevice != null) && (knownDevice.isAlive() != isAlive)) {
+          Log.d(LOG_TAG, "Device announcement: " + knownDevice.getDisplayString() + " => " + state);
+          knownDevice.setAlive(isAlive);
+          if (isAlive) {
+            tellAddListeners(knownDevice);
+          } else {
+            tellRemoveListeners(knownDevice);
+          }
         }
       }
     }
 
+    // Restored device is unverified, but available
+    public boolean addRestored(@NonNull Device device) {
+      if (add(device)) {
+        device.getEmbeddedDevices().forEach(this::add);
+        return true;
+      }
+      return false;
+    }
+
+    // Restored device is replaced by its verified version
+    public void replace(@NonNull Device restoredDevice, @NonNull Device device) {
+      // May have been cleared meanwhile
+      if (isKnown(restoredDevice)) {
+        Log.d(LOG_TAG, "Device verified: " + device.getDisplayString());
+        tellRemoveListeners(restoredDevice);
+        remove(restoredDevice);
+        add(device);
+        device.getEmbeddedDevices().forEach(this::add);
+        writeSnapshot();
+      }
+    }
+
+    public void evict(@NonNull Device restoredDevice) {
+      if (isKnown(restoredDevice)) {
+        Log.d(LOG_TAG, "Device evicted: " + restoredDevice.getDisplayString());
+        tellRemoveListeners(restoredDevice);
+        remove(restoredDevice);
+      }
+    }
+
+    @NonNull
+    public List<Device> getSnapshot() {
+      return getDevices();
+    }
+
     @NonNull
-    public synchronized Stream<Device> getEmbeddedDevicesStream(@NonNull Device device) {
-      return device.getEmbeddedDevices().stream().filter(this::contains);
+    public Stream<Device> getEmbeddedDevicesStream(@NonNull Device device) {
+      return device.getEmbeddedDevices().stream().filter(this::isKnown);
     }
 
     public synchronized void addListener(@NonNull Listener listener) {
-      stream().filter(Device::isAlive).forEach(listener::onDeviceAdd);
+      entries.values().stream()
+        .map(entry -> entry.device)
+        .filter(device -> (device != null) && device.isAlive())
+        .forEach(listener::onDeviceAdd);
       listeners.add(listener);
     }
+
+    // Pending entry is released whatever the result, so that
+    // subsequent announcements for this UUID are not permanently blocked
+    private void fetch(@NonNull Entry pendingEntry, @NonNull String uUID, @NonNull SsdpService service) {
+      AndroidUpnpService.this.fetch(() -> new Device(service), DEVICE_FETCH_TIMEOUT_S, device -> {
+        if (device == null) {
+          Log.w(LOG_TAG, "Device fetch failed: " + service);
+        } else {
+          final Set<Device> embeddedDevices = device.getEmbeddedDevices();
+          Log.d(LOG_TAG, "Device found (embedded: " + embeddedDevices.size() + ", onError: " + device.isOnError() + "): " + device.getDisplayString());
+          // Pending entry is replaced if device has announced UUID
+          boolean isAdded = add(device);
+          for (final Device embeddedDevice : embeddedDevices) {
+            isAdded = add(embeddedDevice) || isAdded;
+          }
+          if (isAdded) {
+            writeSnapshot();
+          }
+        }
+        // No-op if replaced
+        entries.remove(uUID, pendingEntry);
+      });
+    }
+
+    // Same instance, not just same UUID
+    private boolean isKnown(@NonNull Device device) {
+      final String uUID = device.getUUID();
+      return (uUID != null) && (get(uUID) == device);
+    }
+
+    private void remove(@NonNull Device device) {
+      final String uUID = device.getUUID();
+      if (uUID != null) {
+        entries.remove(uUID);
+      }
+      device.getEmbeddedDevices().forEach(embeddedDevice -> {
+        final String embeddedUUID = embeddedDevice.getUUID();
+        if (embeddedUUID != null) {
+          entries.remove(embeddedUUID);
+        }
+      });
+    }
+  }
+
+  private enum State {
+    PENDING, // Description fetch in progress
+    ALIVE,
+    BYEBYE,
+    EXPIRED
+  }
+
+  private static class Entry {
+    @NonNull
+    private final State state;
+    @Nullable
+    private final Device device; // Null if pending
+
+    private Entry(@NonNull State state, @Nullable Device device) {
+      this.state = state;
+      this.device = device;
+    }
   }
-}
\ No newline at end of file
+}
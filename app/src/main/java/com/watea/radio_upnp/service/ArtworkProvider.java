@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2026. Stephane Treuchot
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to
+ * do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.watea.radio_upnp.service;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.watea.radio_upnp.model.Radios;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+
+// Radio icons for media browsers (Android Auto...), read only.
+// URI is icon store key: content never changes for a given URI.
+// Not exported: read access is granted per URI to browsers, see RadioService.
+public class ArtworkProvider extends ContentProvider {
+  private static final String LOG_TAG = ArtworkProvider.class.getSimpleName();
+  private static final String AUTHORITY = "com.watea.radio_upnp.artwork";
+  private static final String MIME_PNG = "image/png";
+
+  @NonNull
+  public static Uri getUri(@NonNull String iconKey) {
+    return new Uri.Builder()
+      .scheme("content")
+      .authority(AUTHORITY)
+      .appendPath(iconKey)
+      .build();
+  }
+
+  @Override
+  public boolean onCreate() {
+    return true;
+  }
+
+  @Nullable
+  @Override
+  public ParcelFileDescriptor openFile(@NonNull Uri uri, @NonNull String mode) throws FileNotFoundException {
+    if (!"r".equals(mode)) {
+      throw new SecurityException("Read only: " + uri);
+    }
+    final String key = uri.getLastPathSegment();
+    final File file = ((key == null) || (getContext() == null)) ? null : Radios.getIconFile(getContext(), key);
+    if ((file == null) || !file.exists()) {
+      Log.d(LOG_TAG, "openFile: no icon for " + uri);
+      throw new FileNotFoundException(uri.toString());
+    }
+    return ParcelFileDescriptor.open(file, ParcelFileDescriptor.MODE_READ_ONLY);
+  }
+
+  @Nullable
+  @Override
+  public String getType(@NonNull Uri uri) {
+    return MIME_PNG;
+  }
+
+  @Nullable
+  @Override
+  public Cursor query(
+    @NonNull Uri uri,
+    @Nullable String[] projection,
+    @Nullable String selection,
+    @Nullable String[] selectionArgs,
+    @Nullable String sortOrder) {
+    return null;
+  }
+
+  @Nullable
+  @Override
+  public Uri insert(@NonNull Uri uri, @Nullable ContentValues values) {
+    return null;
+  }
+
+  @Override
+  public int delete(@NonNull Uri uri, @Nullable String selection, @Nullable String[] selectionArgs) {
+    return 0;
+  }
+
+  @Override
+  public int update(
+    @NonNull Uri uri,
+    @Nullable ContentValues values,
+    @Nullable String selection,
+    @Nullable String[] selectionArgs) {
+    return 0;
+  }
+}
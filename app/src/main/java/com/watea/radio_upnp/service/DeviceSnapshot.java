@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2026. Stephane Treuchot
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to
+ * do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.watea.radio_upnp.service;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import com.watea.radio_upnp.upnp.Device;
+import com.watea.radio_upnp.upnp.URLService;
+
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Persisted known renderers, with their description contents.
+// Contents are held in memory only while writing or restoring.
+// Renderers are restored at startup without network, before SSDP discovery.
+public class DeviceSnapshot {
+  private static final String LOG_TAG = DeviceSnapshot.class.getSimpleName();
+  private static final String FILE = "devices.json";
+  private static final Gson GSON = new Gson();
+  private static final Type ENTRIES_TYPE = new TypeToken<List<Entry>>() {
+  }.getType();
+  @NonNull
+  private final File file;
+
+  public DeviceSnapshot(@NonNull Context context) {
+    file = new File(context.getFilesDir(), FILE);
+  }
+
+  // Restored devices are not verified.
+  // Intended to be called in own thread.
+  @NonNull
+  public synchronized List<Device> restore() {
+    final List<Device> result = new ArrayList<>();
+    for (final Entry entry : read()) {
+      if ((entry.uUID == null) || (entry.location == null) || (entry.contents == null)) {
+        continue;
+      }
+      URLService.putCachedContents(entry.contents);
+      try {
+        final Device device = new Device(new URL(entry.location), entry.uUID, true);
+        if (device.isOnError()) {
+          Log.d(LOG_TAG, "restore: incomplete device " + entry.location);
+        } else {
+          result.add(device);
+        }
+      } catch (IOException | XmlPullParserException exception) {
+        Log.d(LOG_TAG, "restore: unable to restore " + entry.location, exception);
+      }
+    }
+    // Contents are no longer needed
+    URLService.clearCachedContents();
+    Log.d(LOG_TAG, "restore: " + result.size() + " device(s)");
+    return result;
+  }
+
+  // Only verified root devices are written.
+  // Description contents are taken from current snapshot if there, else fetched:
+  // they are not kept in memory.
+  // Intended to be called in own thread.
+  public synchronized void write(@NonNull Collection<Device> devices) {
+    final Map<String, Entry> previousEntries = new HashMap<>();
+    read().forEach(entry -> previousEntries.put(entry.uUID, entry));
+    final List<Entry> entries = new ArrayList<>();
+    devices.stream()
+      .filter(device -> !device.isEmbeddedDevice() && device.isVerified() && (device.getUUID() != null))
+      .forEach(device -> {
+        final Map<String, String> contents = getContents(device, previousEntries.get(device.getUUID()));
+        if (contents != null) {
+          entries.add(new Entry(device, contents));
+        }
+      });
+    // Atomic replacement
+    final File tempFile = new File(file.getPath() + ".tmp");
+    try (final Writer writer = new OutputStreamWriter(new FileOutputStream(tempFile), StandardCharsets.UTF_8)) {
+      GSON.toJson(entries, ENTRIES_TYPE, writer);
+    } catch (IOException | JsonParseException exception) {
+      Log.e(LOG_TAG, "write: unable to write snapshot", exception);
+      return;
+    }
+    if (!tempFile.renameTo(file)) {
+      Log.e(LOG_TAG, "write: unable to rename snapshot");
+    }
+  }
+
+  // Null if unable to fetch
+  @Nullable
+  private static Map<String, String> getContents(@NonNull Device device, @Nullable Entry previousEntry) {
+    final Map<String, URL> uRLs = device.getDescriptionURLs();
+    final Map<String, String> result = new HashMap<>();
+    final boolean isKnown = (previousEntry != null) &&
+      (previousEntry.contents != null) &&
+      device.getLocation().toString().equals(previousEntry.location);
+    for (final Map.Entry<String, URL> uRL : uRLs.entrySet()) {
+      String content = isKnown ? previousEntry.contents.get(uRL.getKey()) : null;
+      if (content == null) {
+        try {
+          content = URLService.fetchContent(uRL.getValue());
+        } catch (IOException iOException) {
+          Log.d(LOG_TAG, "getContents: unable to fetch " + uRL.getKey(), iOException);
+          return null;
+        }
+      }
+      result.put(uRL.getKey(), content);
+    }
+    return result;
+  }
+
+  @NonNull
+  private List<Entry> read() {
+    if (file.exists()) {
+      try (final Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+        final List<Entry> entries = GSON.fromJson(reader, ENTRIES_TYPE);
+        if (entries != null) {
+          return entries;
+        }
+      } catch (IOException | JsonParseException exception) {
+        Log.e(LOG_TAG, "read: unable to read snapshot", exception);
+      }
+    }
+    return new ArrayList<>();
+  }
+
+  private static class Entry {
+    private final String uUID;
+    private final String location;
+    private final Map<String, String> contents;
+
+    private Entry(@NonNull Device device, @NonNull Map<String, String> contents) {
+      uUID = device.getUUID();
+      location = device.getLocation().toString();
+      this.contents = contents;
+    }
+  }
+}
@@ -44,22 +44,13 @@ import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.watea.radio_upnp.model.Radio;
 
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
-import java.util.ArrayList;
-import java.util.Calendar;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Locale;
-import java.util.Map;
 
 @OptIn(markerClass = UnstableApi.class)
 public class RadioPlayer extends SimpleBasePlayer {
-  public static final String DATE = "date";
-  public static final String INFORMATION = "information";
   public static final String PLAYLIST = "playlist";
-  private static final String PLAYLIST_SEPARATOR = "##";
-  private static final String PLAYLIST_ITEM_SEPARATOR = "&&";
+  private static final int PLAYLIST_CAPACITY = 200;
+  private static final int PLAYLIST_WINDOW = 10; // Last titles sent in metadata
   private static final int DEVICE_MAX_VOLUME = 100;
   private static final int DEVICE_NOMINAL_VOLUME = 50;
   private static final int DEVICE_VOLUME_STEP = 5;
@@ -71,6 +62,8 @@ public class RadioPlayer extends SimpleBasePlayer {
   @NonNull
   private final String remoteLabel;
   @NonNull
+  private final TrackHistory trackHistory = new TrackHistory(PLAYLIST_CAPACITY);
+  @NonNull
   private SessionDevice.State sessionDeviceState = SessionDevice.State.IDLE;
   @Nullable
   private SimpleBasePlayer.MediaItemData currentItem = null;
@@ -85,38 +78,29 @@ public class RadioPlayer extends SimpleBasePlayer {
     this.remoteLabel = remoteLabel;
   }
 
-  @NonNull
-  public static List<Map<String, String>> getPlaylist(@NonNull String playlist) {
-    final List<Map<String, String>> result = new ArrayList<>();
-    for (final String line : playlist.split(PLAYLIST_SEPARATOR)) {
-      final String[] items = line.split(PLAYLIST_ITEM_SEPARATOR);
-      final Map<String, String> map = new HashMap<>();
-      if (items.length == 2) {
-        map.put(DATE, items[0]);
-        map.put(INFORMATION, items[1]);
-        result.add(map);
-      }
-    }
-    return result;
-  }
-
   // Must be called at init
   public void init(@NonNull Radio radio, boolean isVolumeControlled, boolean isCurrentPlaylistToKeep) {
     this.isVolumeControlled = isVolumeControlled;
     remoteSuffix = this.isVolumeControlled ? " " + remoteLabel : "";
     volume = DEVICE_NOMINAL_VOLUME;
-    buildSessionMetadata(radio, "", isCurrentPlaylistToKeep ? getCurrentPlaylist() : "");
+    if (!isCurrentPlaylistToKeep) {
+      trackHistory.clear();
+    }
+    setSessionMetadata(radio, "");
     setState(SessionDevice.State.BUFFERING);
   }
 
   public void buildSessionMetadata(@NonNull Radio radio, @NonNull String information) {
-    String playlist = getCurrentPlaylist();
-    if (!playlist.endsWith(information)) {
-      final DateFormat dateFormat = new SimpleDateFormat("HH:mm:ss", Locale.getDefault());
-      final String entry = dateFormat.format(Calendar.getInstance().getTime()) + PLAYLIST_ITEM_SEPARATOR + information;
-      playlist = playlist.isEmpty() ? entry : playlist + PLAYLIST_SEPARATOR + entry;
+    if (!information.isEmpty()) {
+      trackHistory.add(System.currentTimeMillis(), information);
     }
-    buildSessionMetadata(radio, information, playlist);
+    setSessionMetadata(radio, information);
+  }
+
+  // Full history, as read by TrackHistory.getEntries
+  @NonNull
+  public Bundle getPlaylist() {
+    return trackHistory.toBundle();
   }
 
   @NonNull
@@ -236,17 +220,9 @@ public class RadioPlayer extends SimpleBasePlayer {
     return (sessionDeviceState == SessionDevice.State.PLAYING) || (sessionDeviceState == SessionDevice.State.BUFFERING);
   }
 
-  @NonNull
-  private String getCurrentPlaylist() {
-    final MediaItem item = getCurrentMediaItem();
-    final android.os.Bundle extras = (item == null) ? null : item.mediaMetadata.extras;
-    final String playlist = (extras == null) ? null : extras.getString(PLAYLIST);
-    return (playlist == null) ? "" : playlist;
-  }
-
-  private void buildSessionMetadata(@NonNull Radio radio, @NonNull String information, @NonNull String playlist) {
+  private void setSessionMetadata(@NonNull Radio radio, @NonNull String information) {
     final Bundle extras = new Bundle();
-    extras.putString(PLAYLIST, playlist);
+    extras.putBundle(PLAYLIST, trackHistory.toBundle(PLAYLIST_WINDOW));
     setCurrentItem(radio.getId(), radio.getMediaMetadataBuilder(remoteSuffix, information).setExtras(extras).build());
   }
 
@@ -33,8 +33,8 @@ import android.content.Intent;
 import android.content.ServiceConnection;
 import android.content.SharedPreferences;
 import android.content.pm.ServiceInfo;
-import android.graphics.BitmapFactory;
 import android.graphics.Color;
+import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
@@ -67,9 +67,11 @@ import androidx.media3.session.SessionResult;
 import com.google.common.collect.ImmutableList;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
 import com.watea.radio_upnp.R;
 import com.watea.radio_upnp.activity.MainActivity;
 import com.watea.radio_upnp.cast.CastManager;
+import com.watea.radio_upnp.model.ListeningHistory;
 import com.watea.radio_upnp.model.Radio;
 import com.watea.radio_upnp.model.Radios;
 import com.watea.radio_upnp.service.SessionDevice.State;
@@ -77,8 +79,10 @@ import com.watea.radio_upnp.upnp.Device;
 
 import java.io.IOException;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Locale;
+import java.util.Map;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -96,6 +100,10 @@ public class RadioService
   public static final boolean KEY_PCM_MODE_DEFAULT = true;
   public static final String ACTION_SLEEP_SET = "ACTION_SLEEP_SET";
   public static final String ACTION_SLEEP_CANCEL = "ACTION_SLEEP_CANCEL";
+  // Result extras: full track history, as read by TrackHistory.getEntries
+  public static final String ACTION_PLAYLIST_GET = "ACTION_PLAYLIST_GET";
+  // Arguments as read by ListeningHistory.query; result extras as read by ListeningHistory.getEntries
+  public static final String ACTION_HISTORY_GET = "ACTION_HISTORY_GET";
   // Media action intent strings (for notification PendingIntents → onStartCommand)
   private static final String ACTION_MEDIA_PLAY = "ACTION_MEDIA_PLAY";
   private static final String ACTION_MEDIA_PAUSE = "ACTION_MEDIA_PAUSE";
@@ -145,6 +153,9 @@ public class RadioService
   @Nullable
   private LiveData<Integer> carConnectionLiveData = null;
   private CastManager castManager;
+  private ListeningHistory listeningHistory;
+  // Browse tree items, built once per radio; UI thread only
+  private final Map<Radio, MediaItem> mediaItems = new HashMap<>();
   private final Radios.Listener radiosListener = new Radios.Listener() {
     @Override
     public void onPreferredChange() {
@@ -163,11 +174,20 @@ public class RadioService
 
     @Override
     public void onChange(@NonNull Radio radio) {
+      mediaItems.remove(radio);
+      notifyChildrenChanged();
+    }
+
+    // Item had no artwork URI while icon was not stored
+    @Override
+    public void onIconStored(@NonNull Radio radio) {
+      mediaItems.remove(radio);
       notifyChildrenChanged();
     }
 
     @Override
     public void onRemove(int index) {
+      mediaItems.keySet().removeIf(radio -> !Radios.getInstance().contains(radio));
       notifyChildrenChanged();
     }
 
@@ -246,6 +266,8 @@ public class RadioService
     // Cast
     castManager = CastManager.getInstance();
     castManager.setContext(this, this);
+    // Listening history
+    listeningHistory = new ListeningHistory(getFilesDir());
     // Create radios if needed
     Radios.setInstance(this, null);
     Radios.getInstance().addListener(radiosListener);
@@ -281,12 +303,15 @@ public class RadioService
     Log.d(LOG_TAG, "onDestroy");
     // Stop and null sessionDevice before super.onDestroy() so onUpdateNotification sees null and removes the notification
     if (sessionDevice != null) {
+      listeningHistory.end(sessionDevice.getRadio().getId());
       sessionDevice.stop();
       sessionDevice = null;
     }
     super.onDestroy();
     // Radios
     Radios.getInstance().removeListener(radiosListener);
+    // Listening history
+    listeningHistory.release();
     // Release HTTP server
     if (streamServer != null) {
       try {
@@ -405,6 +430,7 @@ public class RadioService
       Log.d(LOG_TAG, "onNewInformation: " + information);
       assert sessionDevice != null;
       radioPlayer.buildSessionMetadata(sessionDevice.getRadio(), information);
+      listeningHistory.add(sessionDevice.getRadio().getId(), information);
       buildNotification();
     });
   }
@@ -542,6 +568,8 @@ public class RadioService
       .add(SessionCommand.COMMAND_CODE_LIBRARY_GET_SEARCH_RESULT)
       .add(new SessionCommand(ACTION_SLEEP_SET, Bundle.EMPTY))
       .add(new SessionCommand(ACTION_SLEEP_CANCEL, Bundle.EMPTY))
+      .add(new SessionCommand(ACTION_PLAYLIST_GET, Bundle.EMPTY))
+      .add(new SessionCommand(ACTION_HISTORY_GET, Bundle.EMPTY))
       .build();
     return MediaSession.ConnectionResult.accept(sessionCommands, new Player.Commands.Builder().addAllCommands().build());
   }
@@ -572,21 +600,40 @@ public class RadioService
     int page,
     int pageSize,
     @Nullable MediaLibraryService.LibraryParams params) {
-    Log.d(LOG_TAG, "onGetChildren: " + parentId);
+    Log.d(LOG_TAG, "onGetChildren: " + parentId + ", page: " + page + "/" + pageSize);
     if (!MEDIA_ROOT_ID.equals(parentId) || !Radios.isInit()) {
       return Futures.immediateFuture(LibraryResult.ofItemList(ImmutableList.of(), params));
     }
-    final ImmutableList.Builder<MediaItem> items = new ImmutableList.Builder<>();
-    for (final Radio radio : Radios.getInstance().getActuallySelectedRadios()) {
-      items.add(new MediaItem.Builder()
-        .setMediaId(radio.getId())
-        .setMediaMetadata(radio.getMediaMetadataBuilder("", "")
-          .setIsPlayable(true)
-          .setIsBrowsable(false)
-          .build())
-        .build());
-    }
-    return Futures.immediateFuture(LibraryResult.ofItemList(items.build(), params));
+    return Futures.immediateFuture(
+      LibraryResult.ofItemList(getPage(browser, Radios.getInstance().getActuallySelectedRadios(), page, pageSize), params));
+  }
+
+  @Override
+  @NonNull
+  public ListenableFuture<LibraryResult<Void>> onSearch(
+    @NonNull MediaLibrarySession session,
+    @NonNull MediaSession.ControllerInfo browser,
+    @NonNull String query,
+    @Nullable MediaLibraryService.LibraryParams params) {
+    Log.d(LOG_TAG, "onSearch: " + query);
+    final int count = Radios.isInit() ? Radios.getInstance().search(query).size() : 0;
+    session.notifySearchResultChanged(browser, query, count, params);
+    return Futures.immediateFuture(LibraryResult.ofVoid());
+  }
+
+  @Override
+  @NonNull
+  public ListenableFuture<LibraryResult<ImmutableList<MediaItem>>> onGetSearchResult(
+    @NonNull MediaLibrarySession session,
+    @NonNull MediaSession.ControllerInfo browser,
+    @NonNull String query,
+    int page,
+    int pageSize,
+    @Nullable MediaLibraryService.LibraryParams params) {
+    Log.d(LOG_TAG, "onGetSearchResult: " + query);
+    return Futures.immediateFuture(LibraryResult.ofItemList(
+      Radios.isInit() ? getPage(browser, Radios.getInstance().search(query), page, pageSize) : ImmutableList.of(),
+      params));
   }
 
   @Override
@@ -603,6 +650,13 @@ public class RadioService
       case ACTION_SLEEP_CANCEL:
         HANDLER.post(sleepController::release);
         break;
+      case ACTION_PLAYLIST_GET:
+        return Futures.immediateFuture(new SessionResult(SessionResult.RESULT_SUCCESS, radioPlayer.getPlaylist()));
+      case ACTION_HISTORY_GET:
+        final SettableFuture<SessionResult> historyFuture = SettableFuture.create();
+        HANDLER.post(() -> listeningHistory.query(args, entries -> historyFuture.set(
+          new SessionResult(SessionResult.RESULT_SUCCESS, ListeningHistory.toBundle(entries)))));
+        return historyFuture;
       default:
         Log.e(LOG_TAG, "onCustomCommand: unknown action: " + customCommand.customAction);
     }
@@ -628,6 +682,58 @@ public class RadioService
     return Futures.immediateFuture(mediaItems);
   }
 
+  // Legacy browsers ask for everything with pageSize Integer.MAX_VALUE
+  @NonNull
+  private ImmutableList<MediaItem> getPage(
+    @NonNull MediaSession.ControllerInfo browser,
+    @NonNull List<Radio> radios,
+    int page,
+    int pageSize) {
+    final long from = (long) Math.max(0, page) * Math.max(1, pageSize);
+    final int to = (int) Math.min(radios.size(), from + Math.max(1, pageSize));
+    final ImmutableList.Builder<MediaItem> items = new ImmutableList.Builder<>();
+    for (int i = (int) Math.min(from, to); i < to; i++) {
+      final MediaItem mediaItem = getMediaItem(radios.get(i));
+      grantArtwork(browser, mediaItem);
+      items.add(mediaItem);
+    }
+    return items.build();
+  }
+
+  // ArtworkProvider is not exported: read access is granted per URI to the browser
+  private void grantArtwork(@NonNull MediaSession.ControllerInfo browser, @NonNull MediaItem mediaItem) {
+    final Uri artworkUri = mediaItem.mediaMetadata.artworkUri;
+    if (artworkUri != null) {
+      try {
+        grantUriPermission(browser.getPackageName(), artworkUri, Intent.FLAG_GRANT_READ_URI_PERMISSION);
+      } catch (IllegalArgumentException | SecurityException exception) {
+        // E.g. legacy controller without actual package name
+        Log.d(LOG_TAG, "grantArtwork: not granted to " + browser.getPackageName());
+      }
+    }
+  }
+
+  @NonNull
+  private MediaItem getMediaItem(@NonNull Radio radio) {
+    final MediaItem mediaItem = mediaItems.get(radio);
+    if (mediaItem != null) {
+      return mediaItem;
+    }
+    // Artwork by URI; icon not in store yet is not referenced, item is then not cached
+    final String iconKey = radio.getStoredIconKey();
+    final MediaItem result = new MediaItem.Builder()
+      .setMediaId(radio.getId())
+      .setMediaMetadata(radio.getMediaMetadataBuilder((iconKey == null) ? null : ArtworkProvider.getUri(iconKey))
+        .setIsPlayable(true)
+        .setIsBrowsable(false)
+        .build())
+      .build();
+    if (iconKey != null) {
+      mediaItems.put(radio, result);
+    }
+    return result;
+  }
+
   @NonNull
   private PendingIntent buildServicePendingIntent(@NonNull String action) {
     return PendingIntent.getForegroundService(
@@ -655,9 +761,9 @@ public class RadioService
     final MediaItem currentItem = radioPlayer.getCurrentMediaItem();
     final MediaMetadata metadata = (currentItem != null) ? currentItem.mediaMetadata : null;
     if (metadata != null) {
-      if (metadata.artworkData != null) {
-        builder.setLargeIcon(BitmapFactory.decodeByteArray(
-          metadata.artworkData, 0, metadata.artworkData.length));
+      if (sessionDevice != null) {
+        builder.setLargeIcon(sessionDevice.getRadio().getNotificationIcon(
+          getResources().getDimensionPixelSize(android.R.dimen.notification_large_icon_width)));
       }
       builder
         .setContentTitle(metadata.subtitle)
@@ -704,6 +810,9 @@ public class RadioService
   }
 
   private void releaseResources() {
+    if (sessionDevice != null) {
+      listeningHistory.end(sessionDevice.getRadio().getId());
+    }
     if (streamServer != null) {
       streamServer.release();
     }
@@ -719,12 +828,17 @@ public class RadioService
     }
     Log.d(LOG_TAG, "playFromMediaId with radio: " + radio.getName() + " => " + radio.getUri());
     getAppPreferences(this).edit().putString(getString(R.string.key_last_played_radio), radio.getId()).apply();
-    final Radio lastRadio = (sessionDevice == null) ? null : sessionDevice.getRadio();
-    if (sessionDevice != null) {
-      sessionDevice.release();
-    }
+    final SessionDevice previousSessionDevice = sessionDevice;
+    final Radio lastRadio = (previousSessionDevice == null) ? null : previousSessionDevice.getRadio();
     sleepController.release();
-    sessionDevice = createSessionDevice(radio);
+    if ((lastRadio != null) && (lastRadio != radio)) {
+      listeningHistory.end(lastRadio.getId());
+    }
+    // Previous session is released after creation of the new one, as renderer streams may be handed over
+    sessionDevice = createSessionDevice(radio, previousSessionDevice);
+    if (previousSessionDevice != null) {
+      previousSessionDevice.release();
+    }
     mediaLibrarySession.setSessionExtras(new Bundle());
     radioPlayer.init(radio, sessionDevice.isRemote(), (radio == lastRadio));
     sessionDevice.launch();
@@ -744,11 +858,7 @@ public class RadioService
         match = radios.get(0);
       }
     } else {
-      final String normalizedQuery = query.trim().toLowerCase(Locale.getDefault());
-      match = radios.stream().filter(radio -> radio.getName().toLowerCase(Locale.getDefault()).equals(normalizedQuery)).findAny().orElse(null);
-      if (match == null) {
-        match = radios.stream().filter(radio -> radio.getName().toLowerCase(Locale.getDefault()).contains(normalizedQuery)).findAny().orElse(null);
-      }
+      match = radios.getRadioFromName(query);
     }
     if (match == null) {
       Log.w(LOG_TAG, "playFromSearch: no match found for query = " + query);
@@ -786,10 +896,11 @@ public class RadioService
 
   // UPnP or Cast not accepted if environment not OK: force local processing
   @NonNull
-  private SessionDevice createSessionDevice(@NonNull Radio radio) {
+  private SessionDevice createSessionDevice(@NonNull Radio radio, @Nullable SessionDevice previousSessionDevice) {
     SessionDevice result = null;
     if (!isAndroidAutoConnected && (streamServer != null) && new NetworkProxy(this).isOnWifi()) {
-      final Device upnpSelectedDevice = (upnpService == null) ? null : upnpService.getActiveSelectedDevice();
+      final List<Device> upnpSelectedDevices =
+        (upnpService == null) ? Collections.emptyList() : upnpService.getActiveSelectedDevices();
       final Consumer<Radio> onPlayCallback = currentRadio -> playFromMediaId(currentRadio.getId());
       if (castManager.hasCastSession()) {
         result = castManager.getCastSessionDevice(
@@ -798,7 +909,7 @@ public class RadioService
           radio,
           onPlayCallback,
           streamServer);
-      } else if (upnpSelectedDevice != null) {
+      } else if (!upnpSelectedDevices.isEmpty()) {
         result = new UpnpSessionDevice(
           this,
           getAppPreferences(this).getBoolean(getString(R.string.key_pcm_mode), KEY_PCM_MODE_DEFAULT),
@@ -807,7 +918,9 @@ public class RadioService
           onPlayCallback,
           streamServer,
           upnpService.getRequestController(),
-          upnpSelectedDevice);
+          upnpService.getEventController(),
+          upnpSelectedDevices,
+          (previousSessionDevice instanceof UpnpSessionDevice) ? (UpnpSessionDevice) previousSessionDevice : null);
       }
     }
     if (result == null) {
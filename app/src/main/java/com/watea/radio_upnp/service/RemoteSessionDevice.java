@@ -28,15 +28,18 @@ import android.net.Uri;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import com.watea.radio_upnp.model.Radio;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.function.Consumer;
 
 public abstract class RemoteSessionDevice extends SessionDevice implements StreamServer.Listener {
   private static final String LOG_TAG = RemoteSessionDevice.class.getSimpleName();
   @NonNull
-  protected final Uri radioUri;
+  protected volatile Uri radioUri;
   @NonNull
   protected final Uri logoUri;
   @NonNull
@@ -56,9 +59,6 @@ public abstract class RemoteSessionDevice extends SessionDevice implements Strea
     this.streamServer = streamServer;
     radioUri = this.streamServer.getStreamUri(lockKey, (this.mode == Mode.PCM));
     logoUri = this.streamServer.getLogoUri(lockKey);
-    if (this.mode == Mode.PCM) {
-      capturingAudioSink.setCallback(this.streamServer);
-    }
   }
 
   @Override
@@ -88,6 +88,12 @@ public abstract class RemoteSessionDevice extends SessionDevice implements Strea
     super.launch();
   }
 
+  // One stream per renderer, served by StreamServer
+  @NonNull
+  public Collection<String> getStreamLockKeys() {
+    return Collections.singleton(lockKey);
+  }
+
   @Override
   public final boolean isRemote() {
     return true;
@@ -104,6 +110,73 @@ public abstract class RemoteSessionDevice extends SessionDevice implements Strea
     super.stop();
   }
 
+  @Override
+  protected void setMode(@NonNull Mode mode) {
+    super.setMode(mode);
+    radioUri = streamServer.getStreamUri(lockKey, (this.mode == Mode.PCM));
+  }
+
+  @NonNull
+  protected Uri getStreamUri(@NonNull String streamLockKey) {
+    return streamServer.getStreamUri(streamLockKey, (mode == Mode.PCM));
+  }
+
+  // Renderer stream is no longer served
+  protected void detachStream(@NonNull String streamLockKey) {
+    streamServer.detach(streamLockKey);
+  }
+
+  @NonNull
+  protected Uri getLogoUri(@NonNull String streamLockKey) {
+    return streamServer.getLogoUri(streamLockKey);
+  }
+
+  // Next radio is prepared ahead; blocks until upstream is probed
+  @Nullable
+  protected Radio.ConnectionSet preload(@NonNull Radio nextRadio) {
+    return streamServer.preload(nextRadio);
+  }
+
+  @Nullable
+  protected Radio.ConnectionSet getPreloaded(@NonNull Radio preloadedRadio) {
+    return streamServer.getPreloaded(preloadedRadio);
+  }
+
+  // Next radio stream is accepted ahead of next session; false if not preloaded
+  protected boolean reserveStream(@NonNull Radio nextRadio, @NonNull String streamLockKey) {
+    return streamServer.reserve(nextRadio, streamLockKey);
+  }
+
+  // Upstream may have been probed ahead
+  @Override
+  protected boolean prepareConnectionSet() {
+    final Radio.ConnectionSet preloaded = streamServer.getPreloaded(radio);
+    if (preloaded == null) {
+      return super.prepareConnectionSet();
+    }
+    connectionSet = preloaded;
+    isUpstreamProbed = true;
+    return true;
+  }
+
+  // See StreamServer.getStreamOffsetS()
+  protected double getStreamOffsetS(@NonNull String streamLockKey) {
+    return streamServer.getStreamOffsetS(streamLockKey);
+  }
+
+  protected void delayStream(@NonNull String streamLockKey, long delayMs) {
+    streamServer.delay(streamLockKey, delayMs);
+  }
+
+  // PCM capture is only wired once mode is settled
+  @Override
+  protected void start() {
+    if (mode == Mode.PCM) {
+      capturingAudioSink.setCallback(streamServer);
+    }
+    super.start();
+  }
+
   @Override
   protected void onState(@NonNull State state) {
     // Error is not accepted if paused
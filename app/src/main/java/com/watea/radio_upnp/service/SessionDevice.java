@@ -81,12 +81,13 @@ public abstract class SessionDevice implements Player.Listener {
   @NonNull
   protected final ExoPlayer exoPlayer;
   @NonNull
-  protected final Mode mode;
+  protected volatile Mode mode; // May be refined by subclasses before start()
   @NonNull
   protected final CapturingAudioSink capturingAudioSink;
   @Nullable
   protected Radio.ConnectionSet connectionSet = null;
   protected volatile boolean isReleased = false;
+  protected volatile boolean isUpstreamProbed = false; // true if connectionSet comes from actual upstream
   private volatile boolean isAllowedToRewind = false;
 
   protected SessionDevice(
@@ -198,7 +199,18 @@ public abstract class SessionDevice implements Player.Listener {
 
   // Fires ERROR if upstream connection failed.
   protected boolean prepare() {
+    if (prepareConnectionSet()) {
+      start();
+      return true;
+    }
+    return false;
+  }
+
+  // Blocks until upstream is probed.
+  // Fires ERROR if upstream connection failed.
+  protected boolean prepareConnectionSet() {
     connectionSet = radio.getConnectionSet(STREAMING_USER_AGENT);
+    isUpstreamProbed = (connectionSet != null);
     if (connectionSet == null) {
       if (isExoPlayerActive()) {
         // Pre-check failed but ExoPlayer may still connect (e.g. server rejects our probe headers)
@@ -211,13 +223,24 @@ public abstract class SessionDevice implements Player.Listener {
         return false;
       }
     }
+    return true;
+  }
+
+  // connectionSet must be defined
+  protected void start() {
+    assert connectionSet != null;
     if (isExoPlayerActive()) {
       // Post ExoPlayer calls to the main thread
       HANDLER.post(this::startExoPlayer);
     } else {
       listener.onNewBitrate(connectionSet.getBitrate(), connectionSet.getContent(), lockKey);
     }
-    return true;
+  }
+
+  // Shall be called before start()
+  protected void setMode(@NonNull Mode mode) {
+    Log.d(LOG_TAG, "setMode: " + mode.name() + "/" + lockKey);
+    this.mode = mode;
   }
 
   @NonNull
@@ -24,9 +24,9 @@
 package com.watea.radio_upnp.service;
 
 import android.content.Context;
-import android.graphics.Bitmap;
 import android.net.Uri;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
@@ -41,14 +41,21 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+// One StreamResource per session: upstream is fetched (passthrough) or decoded (PCM) once,
+// then fanned out to each renderer stream, identified by its own lockKey.
 public class StreamServer extends HttpServer implements CapturingAudioSink.Callback {
   private static final String LOG_TAG = StreamServer.class.getSimpleName();
   private static final String STREAM_PATH = "/stream";
@@ -56,6 +63,7 @@ public class StreamServer extends HttpServer implements CapturingAudioSink.Callb
   private static final String SCHEME = "http";
   private static final int DEFAULT = -1;
   private static final int QUEUE_SIZE = 300; // ~10s buffer at 48000Hz stereo 16-bit (4608 bytes/chunk)
+  private static final int POLL_TIMEOUT = 500; // ms
   private static final String LOGO_PATH = "/logo.jpg";
   private static final String STREAM_SUFFIX_PCM = ".wav";
   private static final Pattern PARAM_PATTERN = Pattern.compile("[?&](?:amp;)*([^=]+)=([^&]*)");
@@ -67,6 +75,8 @@ public class StreamServer extends HttpServer implements CapturingAudioSink.Callb
   private Listener listener = DEFAULT_LISTENER;
   @Nullable
   private volatile StreamResource streamResource = null;
+  @Nullable
+  private volatile Preload preload = null;
 
   public StreamServer(@NonNull Context context) throws IOException {
     this.context = context;
@@ -110,7 +120,7 @@ public class StreamServer extends HttpServer implements CapturingAudioSink.Callb
     if (streamResource == null) {
       Log.d(LOG_TAG, "No queue to receive data");
     } else if (streamResource.lockKey.equals(lockKey)) {
-      streamResource.onPcmData(pcmData);
+      streamResource.offer(pcmData);
     }
   }
 
@@ -130,15 +140,101 @@ public class StreamServer extends HttpServer implements CapturingAudioSink.Callb
   }
 
   // Must be called early before any session is started.
+  // Renderer PCM streams going on with new session are kept open (see StreamResource.takeOver()).
   public void launch(@NonNull RemoteSessionDevice remoteSessionDevice) {
     Log.d(LOG_TAG, "launch: " + remoteSessionDevice.getLockKey());
-    setLaunchConfiguration(new StreamResource(remoteSessionDevice.getRadio(), remoteSessionDevice.getLockKey()), remoteSessionDevice);
+    final StreamResource nextStreamResource = new StreamResource(
+      remoteSessionDevice.getRadio(),
+      remoteSessionDevice.getLockKey(),
+      remoteSessionDevice.getStreamLockKeys(),
+      remoteSessionDevice);
+    final StreamResource previousStreamResource = streamResource;
+    if (previousStreamResource != null) {
+      nextStreamResource.takeOver(previousStreamResource);
+    }
+    setLaunchConfiguration(nextStreamResource, remoteSessionDevice);
+  }
+
+  // Seconds of shared PCM stream not played by renderer since its stream start, NaN if unknown.
+  // Shared stream position played by renderer = offset + renderer elapsed time.
+  public double getStreamOffsetS(@NonNull String lockKey) {
+    final StreamResource streamResource = this.streamResource;
+    return (streamResource == null) ? Double.NaN : streamResource.getOffsetS(lockKey);
+  }
+
+  // Renderer stream is delayed by inserting PCM silence
+  public void delay(@NonNull String lockKey, long delayMs) {
+    final StreamResource streamResource = this.streamResource;
+    if (streamResource != null) {
+      streamResource.delay(lockKey, delayMs);
+    }
+  }
+
+  // Next radio upstream is probed ahead of time, for next session.
+  // Blocks until upstream is probed.
+  @Nullable
+  public Radio.ConnectionSet preload(@NonNull Radio radio) {
+    Radio.ConnectionSet result = getPreloaded(radio);
+    if (result == null) {
+      result = radio.getConnectionSet(SessionDevice.STREAMING_USER_AGENT);
+      if (result != null) {
+        Log.d(LOG_TAG, "preload: " + radio.getName());
+        preload = new Preload(radio, result);
+      }
+    }
+    return result;
+  }
+
+  @Nullable
+  public Radio.ConnectionSet getPreloaded(@NonNull Radio radio) {
+    final Preload preload = this.preload;
+    return ((preload == null) || !preload.isValidFor(radio)) ? null : preload.connectionSet;
+  }
+
+  // Stream of preloaded radio is reserved for next session: renderer may probe it (HEAD, logo)
+  // before session is launched. false if radio is not preloaded.
+  public boolean reserve(@NonNull Radio radio, @NonNull String lockKey) {
+    final Preload preload = this.preload;
+    if ((preload == null) || !preload.isValidFor(radio)) {
+      return false;
+    }
+    Log.d(LOG_TAG, "reserve: " + radio.getName() + " - " + lockKey);
+    preload.lockKeys.add(lockKey);
+    return true;
+  }
+
+  // Transient resource on preloaded radio, not served: streaming waits for session launch
+  @Nullable
+  private StreamResource getReservedResource(@NonNull String lockKey) {
+    final Preload preload = this.preload;
+    return ((preload == null) || !preload.lockKeys.contains(lockKey) || !preload.isValidFor(preload.radio)) ?
+      null : new StreamResource(preload.radio, lockKey, Collections.emptyList(), listener);
+  }
+
+  // Feed is removed wherever it is, as it may be taken over
+  private void removeFeed(@NonNull String lockKey, @NonNull Feed feed) {
+    final StreamResource streamResource = this.streamResource;
+    if (streamResource != null) {
+      streamResource.removeFeed(lockKey, feed);
+    }
+  }
+
+  // Renderer stream is no longer served, others go on
+  public void detach(@NonNull String lockKey) {
+    final StreamResource streamResource = this.streamResource;
+    if (streamResource != null) {
+      streamResource.removeSink(lockKey);
+    }
   }
 
   // Order matters: listener shall be set before streamResource
   private void setLaunchConfiguration(@Nullable StreamResource streamResource, @NonNull Listener listener) {
+    final StreamResource previousStreamResource = this.streamResource;
     this.listener = listener;
     this.streamResource = streamResource;
+    if (previousStreamResource != null) {
+      previousStreamResource.release();
+    }
   }
 
   @NonNull
@@ -210,9 +306,17 @@ public class StreamServer extends HttpServer implements CapturingAudioSink.Callb
       }
       final boolean isHead = "HEAD".equals(method);
       final boolean isGet = "GET".equals(method);
-      if (streamResource.hasLockKey(incomingLockKey) && (isHead || isGet) && accept(request.getPath())) {
-        Log.d(LOG_TAG, className + ": handle valid");
-        handleStream(response, responseStream, isHead, streamResource);
+      if ((incomingLockKey != null) && (isHead || isGet) && accept(request.getPath())) {
+        if (streamResource.hasLockKey(incomingLockKey)) {
+          Log.d(LOG_TAG, className + ": handle valid");
+          handleStream(response, responseStream, isHead, streamResource, incomingLockKey);
+        } else if (isHead || !isStreaming()) {
+          final StreamResource reservedResource = getReservedResource(incomingLockKey);
+          if (reservedResource != null) {
+            Log.d(LOG_TAG, className + ": handle reserved");
+            handleStream(response, responseStream, isHead, reservedResource, incomingLockKey);
+          }
+        }
       }
       Log.d(LOG_TAG, className + ": handle exit - " + method + " - " + incomingLockKey);
     }
@@ -220,11 +324,45 @@ public class StreamServer extends HttpServer implements CapturingAudioSink.Callb
     // Returns true if this handler is responsible for the given path
     protected abstract boolean accept(@NonNull String path);
 
+    // Returns true if GET serves audio, which needs a launched session
+    protected boolean isStreaming() {
+      return true;
+    }
+
     protected abstract void handleStream(
       @NonNull HttpServer.Response response,
       @NonNull OutputStream responseStream,
       boolean isHead,
-      @NonNull StreamResource streamResource) throws IOException;
+      @NonNull StreamResource streamResource,
+      @NonNull String lockKey) throws IOException;
+
+    // Writes shared data to this renderer as long as it is served
+    protected void pipe(
+      @NonNull OutputStream responseStream,
+      @NonNull StreamResource streamResource,
+      @NonNull Feed feed,
+      @NonNull String lockKey) throws IOException {
+      // Feed may be taken over by a new session resource
+      StreamResource currentStreamResource = streamResource;
+      try {
+        while (currentStreamResource.isServing(lockKey)) {
+          feed.writeSilence(responseStream);
+          final byte[] data = feed.queue.poll(POLL_TIMEOUT, TimeUnit.MILLISECONDS);
+          if (data == null) {
+            Log.d(LOG_TAG, "pipe: no data - " + lockKey);
+          } else {
+            currentStreamResource.relaunchWatchdog(lockKey);
+            responseStream.write(data);
+          }
+          final StreamResource nextStreamResource = StreamServer.this.streamResource;
+          if ((nextStreamResource != null) && nextStreamResource.hasFeed(lockKey, feed)) {
+            currentStreamResource = nextStreamResource;
+          }
+        }
+      } catch (InterruptedException interruptedException) {
+        Thread.currentThread().interrupt();
+      }
+    }
 
     // Send HTTP headers immediately — the renderer must not wait on a cold socket
     protected void sendDlnaResponse(
@@ -246,24 +384,114 @@ public class StreamServer extends HttpServer implements CapturingAudioSink.Callb
     }
   }
 
+  private static class Preload {
+    private static final long VALIDITY_MS = 300000L; // Upstream URL may change
+    @NonNull
+    private final Radio radio;
+    @NonNull
+    private final Radio.ConnectionSet connectionSet;
+    private final long timeMs = SystemClock.elapsedRealtime();
+    // Registered as next transport URI by renderers
+    private final Set<String> lockKeys = ConcurrentHashMap.newKeySet();
+
+    public Preload(@NonNull Radio radio, @NonNull Radio.ConnectionSet connectionSet) {
+      this.radio = radio;
+      this.connectionSet = connectionSet;
+    }
+
+    public boolean isValidFor(@NonNull Radio radio) {
+      return (this.radio == radio) && (SystemClock.elapsedRealtime() - timeMs < VALIDITY_MS);
+    }
+  }
+
+  // Shared data as seen by one renderer stream
+  private static class Feed {
+    private static final byte[] SILENCE = new byte[4096];
+    // PCM format sent in WAV header, DEFAULT if not PCM
+    private volatile int sampleRate = DEFAULT;
+    private volatile int channelCount = DEFAULT;
+    private volatile int bitsPerSample = DEFAULT;
+    private final ArrayBlockingQueue<byte[]> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+    private final long startPosition; // Bytes of shared stream before this feed
+    private final AtomicLong pendingSilence = new AtomicLong(); // Bytes
+    private final AtomicLong totalSilence = new AtomicLong(); // Bytes
+
+    public Feed(long startPosition) {
+      this.startPosition = startPosition;
+    }
+
+    public void setPcmFormat(int sampleRate, int channelCount, int bitsPerSample) {
+      this.sampleRate = sampleRate;
+      this.channelCount = channelCount;
+      this.bitsPerSample = bitsPerSample;
+    }
+
+    public boolean isPcm() {
+      return (sampleRate != DEFAULT);
+    }
+
+    public boolean hasPcmFormat(int sampleRate, int channelCount, int bitsPerSample) {
+      return (this.sampleRate == sampleRate) && (this.channelCount == channelCount) && (this.bitsPerSample == bitsPerSample);
+    }
+
+    // Aligned on PCM frames
+    public long getPcmBytes(long durationMs) {
+      final int blockAlign = channelCount * (bitsPerSample / 8);
+      return isPcm() ? (durationMs * sampleRate / 1000L * blockAlign) : 0L;
+    }
+
+    public void addSilence(long bytes) {
+      totalSilence.addAndGet(bytes);
+      pendingSilence.addAndGet(bytes);
+    }
+
+    public void writeSilence(@NonNull OutputStream outputStream) throws IOException {
+      long remaining = pendingSilence.getAndSet(0L);
+      while (remaining > 0) {
+        final int length = (int) Math.min(remaining, SILENCE.length);
+        outputStream.write(SILENCE, 0, length);
+        remaining -= length;
+      }
+    }
+  }
+
   private class StreamResource {
     private static final int CONNECT_WATCHDOG_TIMEOUT_S = 20;
     private static final int LIVELINESS_WATCHDOG_TIMEOUT_S = 10;
+    private static final int PIPE_BUFFER_SIZE = 8192; // Matches default Java I/O buffer size
+    private static final long BRIDGE_MS = 200L; // Silence between stations on a kept stream
     @NonNull
     private final Radio radio;
     @NonNull
-    private final String lockKey;
-    private final Set<ArrayBlockingQueue<byte[]>> queues = new CopyOnWriteArraySet<>();
-    private volatile Watchdog watchdog;
+    private final String lockKey; // Session
+    @NonNull
+    private final Listener listener;
+    // Renderer streams by lockKey, each with its own watchdog
+    private final Map<String, Watchdog> sinks = new ConcurrentHashMap<>();
+    // Current feed of each renderer stream
+    private final Map<String, Feed> feeds = new ConcurrentHashMap<>();
+    private final AtomicLong position = new AtomicLong(); // Bytes offered so far
     // Audio format — set by onFormatChanged() on ExoPlayer thread, read on HTTP server thread.
     private volatile int sampleRate = DEFAULT;
     private volatile int channelCount = DEFAULT;
     private volatile int bitsPerSample = DEFAULT;
-
-    public StreamResource(@NonNull Radio radio, @NonNull String lockKey) {
+    // Passthrough upstream, shared by all renderers
+    @Nullable
+    private Radio.ConnectionSet connectionSet = null;
+    @Nullable
+    private okhttp3.Response upstreamResponse = null;
+    private boolean isReleased = false;
+
+    public StreamResource(
+      @NonNull Radio radio,
+      @NonNull String lockKey,
+      @NonNull Collection<String> sinkLockKeys,
+      @NonNull Listener listener) {
       this.radio = radio;
       this.lockKey = lockKey;
-      watchdog = new Watchdog(listener::onDisconnected, this.lockKey, CONNECT_WATCHDOG_TIMEOUT_S);
+      this.listener = listener;
+      sinkLockKeys.forEach(sinkLockKey ->
+        sinks.put(sinkLockKey, new Watchdog(this.listener::onDisconnected, sinkLockKey, CONNECT_WATCHDOG_TIMEOUT_S)));
     }
 
     @NonNull
@@ -275,6 +503,30 @@ public class StreamServer extends HttpServer implements CapturingAudioSink.Callb
       this.sampleRate = sampleRate;
       this.channelCount = channelCount;
       this.bitsPerSample = bitsPerSample;
+      // WAV header is already sent on taken over streams: renderer has to reconnect
+      feeds.forEach((key, feed) -> {
+        if (feed.isPcm() && !feed.hasPcmFormat(sampleRate, channelCount, bitsPerSample)) {
+          Log.d(LOG_TAG, "onFormatChanged: PCM format changed on kept stream - " + key);
+          feeds.remove(key, feed);
+          removeSink(key);
+          listener.onDisconnected(key);
+        }
+      });
+    }
+
+    // PCM feeds of renderer streams going on with this session keep their HTTP connection:
+    // only the PCM source changes, after a short silence bridge.
+    public void takeOver(@NonNull StreamResource previous) {
+      position.set(previous.position.get());
+      sinks.keySet().forEach(sinkLockKey -> {
+        final Feed feed = previous.feeds.get(sinkLockKey);
+        if ((feed != null) && feed.isPcm() && previous.sinks.containsKey(sinkLockKey)) {
+          Log.d(LOG_TAG, "takeOver: " + sinkLockKey);
+          feed.addSilence(feed.getPcmBytes(BRIDGE_MS));
+          feeds.put(sinkLockKey, feed);
+          onConnected(sinkLockKey);
+        }
+      });
     }
 
     public int getBitsPerSample() {
@@ -289,55 +541,153 @@ public class StreamServer extends HttpServer implements CapturingAudioSink.Callb
       return sampleRate;
     }
 
-    public void onPcmData(@NonNull byte[] pcmData) {
-      if (queues.isEmpty()) {
+    // Fan-out to all renderer feeds
+    public void offer(@NonNull byte[] data) {
+      if (feeds.isEmpty()) {
         Log.d(LOG_TAG, "No queue to receive data");
-        return;
+      } else {
+        feeds.forEach((key, feed) -> {
+          final int remaining = feed.queue.remainingCapacity();
+          if (remaining < QUEUE_SIZE * 0.2F) {
+            Log.w(LOG_TAG, "Queue fill: " + (QUEUE_SIZE - remaining) + "/" + QUEUE_SIZE);
+          }
+          if (!feed.queue.offer(data)) {
+            Log.e(LOG_TAG, "QUEUE FULL => DROP (" + data.length + " bytes)");
+            feeds.remove(key, feed);
+          }
+        });
       }
-      queues.forEach(queue -> {
-        final int remaining = queue.remainingCapacity();
-        if (remaining < QUEUE_SIZE * 0.2F) {
-          Log.w(LOG_TAG, "Queue fill: " + (QUEUE_SIZE - remaining) + "/" + QUEUE_SIZE);
-        }
-        if (!queue.offer(pcmData)) {
-          Log.e(LOG_TAG, "QUEUE FULL => DROP (" + pcmData.length + " bytes)");
-          queues.remove(queue);
-        }
-      });
+      position.addAndGet(data.length);
     }
 
-    @NonNull
-    public String getLockKey() {
-      return lockKey;
+    public double getOffsetS(@NonNull String sinkLockKey) {
+      final Feed feed = feeds.get(sinkLockKey);
+      final int byteRate = getByteRate();
+      return ((feed == null) || (byteRate <= 0)) ?
+        Double.NaN : (double) (feed.startPosition - feed.totalSilence.get()) / byteRate;
     }
 
-    public void relaunchWatchdog() {
-      watchdog.relaunch();
+    // Silence is aligned on PCM frames
+    public void delay(@NonNull String sinkLockKey, long delayMs) {
+      final Feed feed = feeds.get(sinkLockKey);
+      final int byteRate = getByteRate();
+      if ((feed != null) && (byteRate > 0)) {
+        final int blockAlign = channelCount * (bitsPerSample / 8);
+        final long bytes = delayMs * byteRate / 1000L / blockAlign * blockAlign;
+        Log.d(LOG_TAG, "delay: " + delayMs + " ms - " + sinkLockKey);
+        feed.addSilence(bytes);
+      }
     }
 
-    public void onConnected() {
-      listener.onConnected(lockKey);
-      watchdog.cancel();
-      watchdog = new Watchdog(listener::onDisconnected, lockKey, LIVELINESS_WATCHDOG_TIMEOUT_S);
+    // 0 if not PCM or format unknown
+    private int getByteRate() {
+      return (sampleRate == DEFAULT) ? 0 : sampleRate * channelCount * (bitsPerSample / 8);
     }
 
+    public void relaunchWatchdog(@NonNull String sinkLockKey) {
+      final Watchdog watchdog = sinks.get(sinkLockKey);
+      if (watchdog != null) {
+        watchdog.relaunch();
+      }
+    }
+
+    public void onConnected(@NonNull String sinkLockKey) {
+      listener.onConnected(sinkLockKey);
+      sinks.computeIfPresent(sinkLockKey, (key, watchdog) -> {
+        watchdog.cancel();
+        return new Watchdog(listener::onDisconnected, key, LIVELINESS_WATCHDOG_TIMEOUT_S);
+      });
+    }
+
+    public void removeSink(@NonNull String sinkLockKey) {
+      final Watchdog watchdog = sinks.remove(sinkLockKey);
+      if (watchdog != null) {
+        Log.d(LOG_TAG, "removeSink: " + sinkLockKey);
+        watchdog.cancel();
+      }
+    }
+
+    // A new GET from a renderer replaces its previous feed
     @NonNull
-    public ArrayBlockingQueue<byte[]> addQueue() {
-      final ArrayBlockingQueue<byte[]> result = new ArrayBlockingQueue<>(QUEUE_SIZE);
-      queues.add(result);
+    public Feed addFeed(@NonNull String sinkLockKey) {
+      final Feed result = new Feed(position.get());
+      feeds.put(sinkLockKey, result);
       return result;
     }
 
-    public void removeQueue(@NonNull ArrayBlockingQueue<byte[]> queue) {
-      queues.remove(queue);
+    public void removeFeed(@NonNull String sinkLockKey, @NonNull Feed feed) {
+      feeds.remove(sinkLockKey, feed);
+    }
+
+    public boolean hasFeed(@NonNull String sinkLockKey, @NonNull Feed feed) {
+      return (feeds.get(sinkLockKey) == feed);
+    }
+
+    // Session lockKey is accepted for logo
+    public boolean hasLockKey(@NonNull String lockKey) {
+      return this.lockKey.equals(lockKey) || sinks.containsKey(lockKey);
+    }
+
+    public boolean isServing(@NonNull String sinkLockKey) {
+      return (this == streamResource) && sinks.containsKey(sinkLockKey);
+    }
+
+    // Upstream is probed once for all renderers, if not preloaded
+    @Nullable
+    public synchronized Radio.ConnectionSet getConnectionSet() {
+      if (connectionSet == null) {
+        connectionSet = getPreloaded(radio);
+      }
+      if (connectionSet == null) {
+        connectionSet = radio.getConnectionSet(SessionDevice.STREAMING_USER_AGENT);
+      }
+      return connectionSet;
+    }
+
+    // Upstream is connected by the first renderer, next ones join
+    public synchronized void startRelay(@NonNull Radio.ConnectionSet connectionSet) throws IOException {
+      if (isReleased) {
+        throw new IOException("startRelay: resource is released");
+      }
+      if (upstreamResponse == null) {
+        final okhttp3.Response response = new RadioURL(connectionSet.getUrl()).getActualOkHttpResponse(
+          SessionDevice.STREAMING_USER_AGENT,
+          Collections.singletonMap("Icy-Metadata", "1"));
+        upstreamResponse = response;
+        new Thread(() -> relay(response), "StreamRelay").start();
+      }
     }
 
-    public boolean hasLockKey(@Nullable String lockKey) {
-      return this.lockKey.equals(lockKey);
+    public synchronized void release() {
+      isReleased = true;
+      sinks.values().forEach(Watchdog::cancel);
+      // Unblocks relay thread
+      if (upstreamResponse != null) {
+        upstreamResponse.close();
+      }
     }
 
-    public boolean hasLockKey() {
-      return (this == streamResource);
+    // Own thread, ICY metadata are parsed once
+    private void relay(@NonNull okhttp3.Response response) {
+      final String icyMetaIntValue = response.header("Icy-Metaint");
+      final IcyStreamParser parser = (icyMetaIntValue == null) ? null :
+        new IcyStreamParser(Integer.parseInt(icyMetaIntValue), title -> listener.onNewInformation(title, lockKey));
+      final byte[] buf = new byte[PIPE_BUFFER_SIZE];
+      int n;
+      Log.d(LOG_TAG, "relay: start - " + lockKey);
+      try (final InputStream inputStream = response.body().byteStream()) {
+        while ((this == streamResource) && ((n = inputStream.read(buf)) >= 0)) {
+          offer((parser == null) ? Arrays.copyOf(buf, n) : parser.parse(buf, n));
+        }
+      } catch (IOException ioException) {
+        Log.d(LOG_TAG, "relay: IOException - " + lockKey + "; " + ioException.getMessage());
+      } finally {
+        response.close();
+      }
+      // Upstream lost for all renderers
+      if (this == streamResource) {
+        sinks.keySet().forEach(listener::onDisconnected);
+      }
     }
   }
 
@@ -348,18 +698,24 @@ public class StreamServer extends HttpServer implements CapturingAudioSink.Callb
       return path.equals(LOGO_PATH);
     }
 
+    @Override
+    protected boolean isStreaming() {
+      return false;
+    }
+
     @Override
     protected void handleStream(
       @NonNull HttpServer.Response response,
       @NonNull OutputStream responseStream,
       boolean isHead,
-      @NonNull StreamResource streamResource) throws IOException {
+      @NonNull StreamResource streamResource,
+      @NonNull String lockKey) throws IOException {
       // Should not happen
       if (isHead) {
         return;
       }
       Log.d(LOG_TAG, "Serving logo");
-      final byte[] logoBytes = streamResource.getRadio().iconToBytes(Bitmap.CompressFormat.JPEG, 90);
+      final byte[] logoBytes = streamResource.getRadio().getLogoBytes();
       if (logoBytes.length == 0) {
         Log.e(LOG_TAG, "No logo available");
         return;
@@ -374,7 +730,6 @@ public class StreamServer extends HttpServer implements CapturingAudioSink.Callb
   // Serves the audio stream in PCM/WAV mode
   private class PcmStreamHandler extends BaseStreamHandler {
     private static final int GET_TIMEOUT = 10000; // ms
-    private static final int PACER_POLL_TIMEOUT = 500; // ms
 
     @Override
     protected boolean accept(@NonNull String path) {
@@ -386,22 +741,23 @@ public class StreamServer extends HttpServer implements CapturingAudioSink.Callb
       @NonNull HttpServer.Response response,
       @NonNull OutputStream responseStream,
       boolean isHead,
-      @NonNull StreamResource streamResource) throws IOException {
+      @NonNull StreamResource streamResource,
+      @NonNull String lockKey) throws IOException {
       // HEAD
       response.addHeader(Response.CONTENT_LENGTH, String.valueOf(Long.MAX_VALUE)); // Fake length for streaming WAV
-      sendDlnaResponse(response, responseStream, UpnpSessionDevice.PCM_MIME, streamResource.getLockKey());
+      sendDlnaResponse(response, responseStream, UpnpSessionDevice.PCM_MIME, lockKey);
       if (isHead) {
         return;
       }
-      // Create queue
-      final ArrayBlockingQueue<byte[]> queue = streamResource.addQueue();
+      // Create feed
+      final Feed feed = streamResource.addFeed(lockKey);
       // Wait for onFormatChanged()
       final long deadline = System.currentTimeMillis() + GET_TIMEOUT;
       try {
         while (streamResource.getSampleRate() == DEFAULT) {
           if (System.currentTimeMillis() > deadline) {
-            Log.e(LOG_TAG, "PcmStreamHandler: timeout waiting for audio format - " + streamResource.getLockKey());
-            listener.onDisconnected(streamResource.getLockKey());
+            Log.e(LOG_TAG, "PcmStreamHandler: timeout waiting for audio format - " + lockKey);
+            listener.onDisconnected(lockKey);
             return;
           }
           try {
@@ -409,32 +765,24 @@ public class StreamServer extends HttpServer implements CapturingAudioSink.Callb
             Thread.sleep(50);
           } catch (InterruptedException interruptedException) {
             Thread.currentThread().interrupt();
-            listener.onDisconnected(streamResource.getLockKey());
+            listener.onDisconnected(lockKey);
             return;
           }
         }
         // We signal actual connection and start stream
-        streamResource.onConnected();
-        responseStream.write(buildWavHeader(streamResource.getSampleRate(), streamResource.getChannelCount(), streamResource.getBitsPerSample()));
-        Log.d(LOG_TAG, "PcmStreamHandler: start streaming - " + streamResource.getLockKey());
-        try {
-          while (streamResource.hasLockKey()) {
-            final byte[] pcmData = queue.poll(PACER_POLL_TIMEOUT, TimeUnit.MILLISECONDS);
-            if (pcmData == null) {
-              Log.d(LOG_TAG, "PcmStreamHandler: pcmData is null");
-            } else {
-              streamResource.relaunchWatchdog();
-              responseStream.write(pcmData);
-            }
-          }
-        } catch (InterruptedException interruptedException) {
-          Thread.currentThread().interrupt();
-        }
+        streamResource.onConnected(lockKey);
+        final int sampleRate = streamResource.getSampleRate();
+        final int channelCount = streamResource.getChannelCount();
+        final int bitsPerSample = streamResource.getBitsPerSample();
+        feed.setPcmFormat(sampleRate, channelCount, bitsPerSample);
+        responseStream.write(buildWavHeader(sampleRate, channelCount, bitsPerSample));
+        Log.d(LOG_TAG, "PcmStreamHandler: start streaming - " + lockKey);
+        pipe(responseStream, streamResource, feed, lockKey);
       } catch (IOException ioException) {
-        Log.d(LOG_TAG, "PcmStreamHandler: IOException - " + streamResource.getLockKey() + "; " + ioException.getMessage());
+        Log.d(LOG_TAG, "PcmStreamHandler: IOException - " + lockKey + "; " + ioException.getMessage());
         throw ioException;
       } finally {
-        streamResource.removeQueue(queue);
+        removeFeed(lockKey, feed);
       }
     }
 
@@ -465,8 +813,6 @@ public class StreamServer extends HttpServer implements CapturingAudioSink.Callb
 
   // Serves the audio stream in passthrough mode
   private class PassthroughStreamHandler extends BaseStreamHandler {
-    private static final int PIPE_BUFFER_SIZE = 8192; // Matches default Java I/O buffer size
-
     @Override
     protected boolean accept(@NonNull String path) {
       return !path.endsWith(STREAM_SUFFIX_PCM);
@@ -477,52 +823,39 @@ public class StreamServer extends HttpServer implements CapturingAudioSink.Callb
       @NonNull HttpServer.Response response,
       @NonNull OutputStream responseStream,
       boolean isHead,
-      @NonNull StreamResource streamResource) throws IOException {
+      @NonNull StreamResource streamResource,
+      @NonNull String lockKey) throws IOException {
       // HEAD
-      final Radio.ConnectionSet connectionSet = streamResource.getRadio().getConnectionSet(SessionDevice.STREAMING_USER_AGENT);
+      final Radio.ConnectionSet connectionSet = streamResource.getConnectionSet();
       if (connectionSet == null) {
         Log.d(LOG_TAG, "PassthroughStreamHandler: upstream is not defined");
-        listener.onDisconnected(streamResource.getLockKey());
+        listener.onDisconnected(lockKey);
         return;
       }
-      sendDlnaResponse(response, responseStream, connectionSet.getContent(), streamResource.getLockKey());
+      sendDlnaResponse(response, responseStream, connectionSet.getContent(), lockKey);
       if (isHead) {
         return;
       }
-      // New upstream connection per GET thread — a shared connection causes concurrent stream corruption
-      final okhttp3.Response upstreamResponse;
+      // Each renderer has its own feed on the shared upstream, so no concurrent stream corruption
+      final Feed feed = streamResource.addFeed(lockKey);
       try {
-        upstreamResponse = new RadioURL(connectionSet.getUrl()).getActualOkHttpResponse(
-          SessionDevice.STREAMING_USER_AGENT,
-          java.util.Collections.singletonMap("Icy-Metadata", "1"));
-      } catch (IOException ioException) {
-        Log.d(LOG_TAG, "PassthroughStreamHandler: unable to connect", ioException);
-        listener.onDisconnected(streamResource.getLockKey());
-        throw ioException;
-      }
-      // We signal actual connection and start stream
-      streamResource.onConnected();
-      final String icyMetaIntValue = upstreamResponse.header("Icy-Metaint");
-      final IcyStreamParser parser = (icyMetaIntValue == null) ? null :
-        new IcyStreamParser(Integer.parseInt(icyMetaIntValue), title -> listener.onNewInformation(title, streamResource.getLockKey()));
-      final byte[] buf = new byte[PIPE_BUFFER_SIZE];
-      int n;
-      Log.d(LOG_TAG, "PassthroughStreamHandler: start streaming - " + streamResource.getLockKey());
-      try (final InputStream inputStream = upstreamResponse.body().byteStream()) {
-        while (streamResource.hasLockKey() && ((n = inputStream.read(buf)) >= 0)) {
-          streamResource.relaunchWatchdog();
-          if (parser == null) {
-            responseStream.write(buf, 0, n);
-          } else {
-            responseStream.write(parser.parse(buf, n));
-          }
+        try {
+          streamResource.startRelay(connectionSet);
+        } catch (IOException ioException) {
+          Log.d(LOG_TAG, "PassthroughStreamHandler: unable to connect", ioException);
+          listener.onDisconnected(lockKey);
+          throw ioException;
         }
+        // We signal actual connection and start stream
+        streamResource.onConnected(lockKey);
+        Log.d(LOG_TAG, "PassthroughStreamHandler: start streaming - " + lockKey);
+        pipe(responseStream, streamResource, feed, lockKey);
       } catch (IOException ioException) {
-        Log.d(LOG_TAG, "PassthroughStreamHandler: IOException - " + streamResource.getLockKey() + "; " + ioException.getMessage());
+        Log.d(LOG_TAG, "PassthroughStreamHandler: IOException - " + lockKey + "; " + ioException.getMessage());
         throw ioException;
       } finally {
-        upstreamResponse.close();
+        removeFeed(lockKey, feed);
       }
     }
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2026. Stephane Treuchot
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to
+ * do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.watea.radio_upnp.service;
+
+import android.os.Bundle;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+// Last played titles, oldest first. Fixed capacity: oldest are dropped.
+// Must be called from UI thread.
+public class TrackHistory {
+  public static final String DATE = "date";
+  public static final String INFORMATION = "information";
+  private static final String DATES = "dates";
+  private static final String INFORMATIONS = "informations";
+  private final long[] dates;
+  private final String[] informations;
+  private int start = 0; // Oldest
+  private int size = 0;
+
+  public TrackHistory(int capacity) {
+    dates = new long[capacity];
+    informations = new String[capacity];
+  }
+
+  // As given by toBundle; formatted for display, oldest first
+  @NonNull
+  public static List<Map<String, String>> getEntries(@Nullable Bundle bundle) {
+    final List<Map<String, String>> result = new ArrayList<>();
+    final long[] bundleDates = (bundle == null) ? null : bundle.getLongArray(DATES);
+    final String[] bundleInformations = (bundle == null) ? null : bundle.getStringArray(INFORMATIONS);
+    if ((bundleDates != null) && (bundleInformations != null)) {
+      final DateFormat dateFormat = new SimpleDateFormat("HH:mm:ss", Locale.getDefault());
+      for (int i = 0; i < Math.min(bundleDates.length, bundleInformations.length); i++) {
+        final Map<String, String> map = new HashMap<>();
+        map.put(DATE, dateFormat.format(new Date(bundleDates[i])));
+        map.put(INFORMATION, bundleInformations[i]);
+        result.add(map);
+      }
+    }
+    return result;
+  }
+
+  // Same information twice in a row is recorded once
+  public void add(long date, @NonNull String information) {
+    if ((size > 0) && information.equals(informations[index(size - 1)])) {
+      return;
+    }
+    if (size < informations.length) {
+      size++;
+    } else {
+      start = index(1);
+    }
+    dates[index(size - 1)] = date;
+    informations[index(size - 1)] = information;
+  }
+
+  public void clear() {
+    for (int i = 0; i < size; i++) {
+      informations[index(i)] = null;
+    }
+    start = 0;
+    size = 0;
+  }
+
+  // Last count entries at most
+  @NonNull
+  public Bundle toBundle(int count) {
+    final int length = Math.min(count, size);
+    final long[] bundleDates = new long[length];
+    final String[] bundleInformations = new String[length];
+    for (int i = 0; i < length; i++) {
+      final int index = index(size - length + i);
+      bundleDates[i] = dates[index];
+      bundleInformations[i] = informations[index];
+    }
+    final Bundle bundle = new Bundle();
+    bundle.putLongArray(DATES, bundleDates);
+    bundle.putStringArray(INFORMATIONS, bundleInformations);
+    return bundle;
+  }
+
+  @NonNull
+  public Bundle toBundle() {
+    return toBundle(size);
+  }
+
+  // Storage index of i-th oldest entry
+  private int index(int i) {
+    return (start + i) % informations.length;
+  }
+}
@@ -25,6 +25,8 @@ package com.watea.radio_upnp.service;
 
 import android.content.Context;
 import android.media.AudioManager;
+import android.net.Uri;
+import android.os.SystemClock;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
@@ -32,15 +34,35 @@ import androidx.annotation.Nullable;
 
 import com.watea.radio_upnp.R;
 import com.watea.radio_upnp.model.Radio;
+import com.watea.radio_upnp.model.Radios;
 import com.watea.radio_upnp.upnp.Action;
 import com.watea.radio_upnp.upnp.Device;
+import com.watea.radio_upnp.upnp.EventController;
+import com.watea.radio_upnp.upnp.RendererCapabilities;
 import com.watea.radio_upnp.upnp.Request;
 import com.watea.radio_upnp.upnp.RequestController;
 import com.watea.radio_upnp.upnp.Service;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.stream.Collectors;
 
+// Session on a set of renderers (multi-room).
+// Upstream is fetched and decoded once; each renderer has its own stream and UPnP pipeline.
 public class UpnpSessionDevice extends RemoteSessionDevice {
   public static final String PCM_MIME = "audio/wav";
   private static final String PROTOCOL_INFO_TAIL = "DLNA.ORG_OP=00;DLNA.ORG_CI=0;DLNA.ORG_FLAGS=01700000000000000000000000000000";
@@ -52,28 +74,41 @@ public class UpnpSessionDevice extends RemoteSessionDevice {
   private static final String ACTION_PREPARE_FOR_CONNECTION = "PrepareForConnection";
   private static final String ACTION_SET_AV_TRANSPORT_URI = "SetAVTransportURI";
   private static final String ACTION_GET_PROTOCOL_INFO = "GetProtocolInfo";
+  private static final String ACTION_SET_NEXT_AV_TRANSPORT_URI = "SetNextAVTransportURI";
+  private static final String ACTION_NEXT = "Next";
   private static final String ACTION_PLAY = "Play";
   private static final String ACTION_STOP = "Stop";
   private static final String ACTION_SET_VOLUME = "SetVolume";
   private static final String ACTION_GET_VOLUME = "GetVolume";
+  private static final String ACTION_GET_POSITION_INFO = "GetPositionInfo";
   private static final String INPUT_DESIRED_VOLUME = "DesiredVolume";
   private static final String INPUT_CHANNEL = "Channel";
   private static final String INPUT_MASTER = "Master";
+  private static final String EVENT_TRANSPORT_STATE = "TransportState";
+  private static final String EVENT_VOLUME = "Volume";
+  // s, upper bound for renderer setup; request timeouts shall fire before
+  private static final long RENDERER_SETUP_TIMEOUT_S = 30L;
   @NonNull
   private final RequestController requestController;
-  @Nullable
-  private final Service connectionManager;
-  @Nullable
-  private final Service avTransportService;
-  @Nullable
-  private final Service renderingControl;
   @NonNull
-  private final String information; // Not final in further use
-  private int currentVolume;
-  private int volumeDirection = AudioManager.ADJUST_SAME;
+  private final EventController eventController;
   @NonNull
-  private String instanceId = "0";
+  private final String information; // Not final in further use
+  // Renderers still in session; first one streams on session lockKey
+  private final List<Renderer> renderers = new CopyOnWriteArrayList<>();
+  private final LatencyAligner latencyAligner = new LatencyAligner();
+  // Blocking background work of session (volume), threads reused across tasks
+  private final ExecutorService executor = Executors.newCachedThreadPool();
+  // Next radio in list, resolved on UI thread (Radios is UI-thread-only)
+  @Nullable
+  private final Radio upcomingRadio;
+  private long startTimeMs = 0L;
 
+  // isPcm: PCM is allowed; actually used only if renderers can not play upstream content.
+  // previousSession: renderers playing its PCM stream are taken over, their stream is kept open
+  // and only its source changes (no SOAP action). Renderers having this radio registered as
+  // next transport URI are taken over too, and just go to Next.
+  // Must be called on UI thread.
   public UpnpSessionDevice(
     @NonNull Context context,
     boolean isPcm,
@@ -82,15 +117,38 @@ public class UpnpSessionDevice extends RemoteSessionDevice {
     @NonNull Consumer<Radio> onPlayCallback,
     @NonNull StreamServer streamServer,
     @NonNull RequestController requestController,
-    @NonNull Device device) {
+    @NonNull EventController eventController,
+    @NonNull Collection<Device> devices,
+    @Nullable UpnpSessionDevice previousSession) {
     super(context, isPcm ? Mode.PCM : Mode.MUTE, listener, radio, onPlayCallback, streamServer);
     this.requestController = requestController;
+    this.eventController = eventController;
     information = this.context.getString(R.string.app_name);
-    // Only devices with AVTransport are processed
-    avTransportService = device.getShortService(AV_TRANSPORT_SERVICE_ID);
-    // Those services are mandatory in UPnP standard
-    connectionManager = device.getShortService(CONNECTION_MANAGER_ID);
-    renderingControl = device.getShortService(RENDERING_CONTROL_ID);
+    for (final Device device : devices) {
+      final Renderer previousRenderer = (isPcm && (previousSession != null)) ? previousSession.handOver(device) : null;
+      final Renderer previousNextRenderer =
+        ((previousRenderer == null) && (previousSession != null)) ? previousSession.handOverNext(device, radio) : null;
+      final String nextLockKey = (previousNextRenderer == null) ? null : previousNextRenderer.nextLockKey;
+      if (previousRenderer != null) {
+        renderers.add(new Renderer(previousRenderer, previousRenderer.lockKey, false));
+      } else if (nextLockKey != null) {
+        renderers.add(new Renderer(previousNextRenderer, nextLockKey, true));
+      } else {
+        renderers.add(new Renderer(device, renderers.isEmpty() ? lockKey : UUID.randomUUID().toString()));
+      }
+    }
+    // Next transport URI is a passthrough stream: Next is only used if the whole group can go passthrough,
+    // otherwise those renderers get a regular start
+    if (renderers.stream().anyMatch(renderer -> renderer.isNext)) {
+      if (canGroupPlayPreloaded()) {
+        setMode(Mode.MUTE);
+      } else {
+        Log.d(LOG_TAG, "Next transport URI not usable by group, regular start");
+        renderers.replaceAll(renderer -> renderer.isNext ? new Renderer(renderer.device, renderer.lockKey) : renderer);
+      }
+    }
+    final Radio next = Radios.isInit() ? Radios.getInstance().getRadioFrom(radio, 1) : null;
+    upcomingRadio = (next == radio) ? null : next;
   }
 
   @NonNull
@@ -121,48 +179,128 @@ public class UpnpSessionDevice extends RemoteSessionDevice {
     return result + PROTOCOL_INFO_TAIL;
   }
 
-  @Override
-  public void adjustVolume(int direction) {
-    final Request request = getActionGetVolume();
-    if (request == null) {
-      Log.e(LOG_TAG, "adjustVolume: scheduleActionGetVolume() is null");
-      return;
+  // H+:MM:SS[.F+] or H+:MM:SS[.F0/F1] to s, NaN if not a time (e.g. NOT_IMPLEMENTED)
+  private static double parseTime(@NonNull String time) {
+    final String[] parts = time.trim().split(":");
+    if (parts.length != 3) {
+      return Double.NaN;
     }
-    // Do only if nothing done currently
-    if (volumeDirection == AudioManager.ADJUST_SAME) {
-      volumeDirection = direction;
-      request.ownThreadExecute();
+    try {
+      String seconds = parts[2];
+      double fraction = 0.0;
+      final int dot = seconds.indexOf('.');
+      if (dot >= 0) {
+        final String fractionString = seconds.substring(dot + 1);
+        seconds = seconds.substring(0, dot);
+        final int slash = fractionString.indexOf('/');
+        if (slash < 0) {
+          fraction = Double.parseDouble("0." + fractionString);
+        } else {
+          final int denominator = Integer.parseInt(fractionString.substring(slash + 1));
+          fraction = (denominator == 0) ? 0.0 : (double) Integer.parseInt(fractionString.substring(0, slash)) / denominator;
+        }
+      }
+      return Integer.parseInt(parts[0]) * 3600.0 + Integer.parseInt(parts[1]) * 60.0 + Integer.parseInt(seconds) + fraction;
+    } catch (NumberFormatException numberFormatException) {
+      return Double.NaN;
     }
   }
 
+  // MIME type as declared by renderers for upstream content
+  @NonNull
+  private static String getRendererMime(@NonNull String content) {
+    switch (content) {
+      case "audio/aac":
+      case "audio/x-aac":
+      case "audio/aacp":
+        // Renderers list audio/mp4, not raw AAC MIME types
+        return "audio/mp4";
+      case "audio/x-mpeg":
+      case "audio/mp2":
+      case "audio/mpeg3":
+      case "audio/x-mp3":
+        // Normalize all MP3 variants
+        return "audio/mpeg";
+      case "audio/x-m4a":
+        return "audio/mp4";
+      case "audio/ogg":
+      case "audio/vorbis":
+      case "application/ogg":
+        // OGG: no standard DLNA MIME, best effort
+        return "audio/ogg";
+      default:
+        return content;
+    }
+  }
+
+  @Override
+  public void adjustVolume(int direction) {
+    renderers.forEach(renderer -> renderer.volumeController.adjust(direction));
+  }
+
   @Override
   public void pause() {
     super.pause();
-    scheduleActionStop();
+    renderers.forEach(Renderer::scheduleActionStop);
   }
 
   @Override
   public void stop() {
     super.stop();
-    scheduleActionStop();
+    renderers.forEach(Renderer::scheduleActionStop);
   }
 
   @Override
   public void release() {
     super.release();
-    scheduleActionStop();
+    latencyAligner.release();
+    renderers.forEach(Renderer::release);
+    executor.shutdown();
+  }
+
+  @NonNull
+  @Override
+  public Collection<String> getStreamLockKeys() {
+    return renderers.stream().map(renderer -> renderer.lockKey).collect(Collectors.toList());
+  }
+
+  @Override
+  public void onDisconnected(@NonNull String lockKey) {
+    Log.d(LOG_TAG, "onDisconnected: " + lockKey);
+    final Renderer renderer = getRenderer(lockKey);
+    if (renderer != null) {
+      onRendererState(renderer, State.ERROR);
+    }
+  }
+
+  @Override
+  public void onConnected(@NonNull String lockKey) {
+    Log.d(LOG_TAG, "onConnected: " + lockKey);
+    if (getRenderer(lockKey) != null) {
+      allowRewind();
+    }
   }
 
+  // Session start is run as a small dependency graph, renderers in parallel:
+  //  GetProtocolInfo -> PrepareForConnection  (per renderer, on RequestController device thread)
+  //  upstream probe                           (on calling thread, concurrently)
+  //  event subscriptions                      (on EventController thread, not waited for)
+  //  all done => mode negotiation => SetAVTransportURI -> Play (per renderer)
+  //                                  (need ConnectionSet and renderer capabilities)
   @Override
   protected boolean prepare() {
-    // super.prepare() blocks until the upstream HTTP connection is established.
+    startTimeMs = SystemClock.elapsedRealtime();
+    renderers.forEach(Renderer::setup);
+    // prepareConnectionSet() blocks until the upstream HTTP connection is established.
     // By the time it returns, the session may have been released (e.g. by a
     // connect watchdog). Guard against scheduling stale UPnP actions.
-    if (super.prepare() && !isReleased) {
-      scheduleActionGetProtocolInfo();
-      scheduleActionPrepareForConnection();
-      scheduleActionSetAvTransportUri();
-      scheduleActionPlay();
+    final boolean isUpstreamReady = prepareConnectionSet();
+    logStage("upstream probe");
+    if (isUpstreamReady && !isReleased && awaitRendererSetup() && !isReleased) {
+      negotiateMode();
+      start();
+      renderers.forEach(Renderer::scheduleStart);
+      latencyAligner.start();
       return true;
     }
     return false;
@@ -173,141 +311,854 @@ public class UpnpSessionDevice extends RemoteSessionDevice {
   protected void setVolume(float volume) {
   }
 
-  private void scheduleMandatoryAction(@Nullable Action action, @NonNull Function<Action, Request> function) {
-    if (action == null) {
-      // Shall not happen
-      Log.e(LOG_TAG, "scheduleMandatoryAction: mandatory UPnP action not found");
-      onState(State.ERROR);
-      return;
+  // Renderer actually playing our PCM stream is handed over to next session, not stopped
+  @Nullable
+  private synchronized Renderer handOver(@NonNull Device device) {
+    if (isReleased || (mode != Mode.PCM)) {
+      return null;
+    }
+    final Renderer result = renderers.stream()
+      .filter(renderer -> renderer.device.equals(device) && (renderer.state == State.PLAYING))
+      .findFirst()
+      .orElse(null);
+    if (result != null) {
+      Log.d(LOG_TAG, "handOver: " + result.getDisplayString());
+      result.isHandedOver = true;
     }
-    function.apply(action).schedule();
+    return result;
   }
 
-  private void scheduleOptionalAction(@Nullable Action action, @NonNull Function<Action, Request> function) {
-    if (action != null) {
-      function.apply(action).schedule();
+  // Renderer having next radio registered as next transport URI is handed over to next session
+  @Nullable
+  private synchronized Renderer handOverNext(@NonNull Device device, @NonNull Radio nextRadio) {
+    if (isReleased) {
+      return null;
     }
+    final Renderer result = renderers.stream()
+      .filter(renderer -> renderer.device.equals(device) &&
+        (renderer.state == State.PLAYING) &&
+        (renderer.nextRadio == nextRadio) &&
+        (renderer.nextLockKey != null))
+      .findFirst()
+      .orElse(null);
+    if (result != null) {
+      Log.d(LOG_TAG, "handOverNext: " + result.getDisplayString());
+      result.isHandedOver = true;
+    }
+    return result;
   }
 
-  private void scheduleActionGetProtocolInfo() {
-    scheduleOptionalAction(
-      (connectionManager == null) ? null : connectionManager.getAction(ACTION_GET_PROTOCOL_INFO),
-      action -> new Request(action, requestController) {
-        @Override
-        protected void onSuccess() {
-          final String sink = getResponse("Sink");
-          if (sink == null) {
-            Log.i(LOG_TAG, "ProtocolInfo: null");
-          } else {
-            for (final String entry : sink.split(",")) {
-              Log.i(LOG_TAG, "ProtocolInfo: " + entry);
+  @Nullable
+  private Renderer getRenderer(@NonNull String lockKey) {
+    return renderers.stream().filter(renderer -> renderer.lockKey.equals(lockKey)).findFirst().orElse(null);
+  }
+
+  // A failing renderer leaves the session, which goes on as long as one renderer is alive.
+  // Otherwise the most advanced renderer state is the session state.
+  // Called from request, stream and event threads: leave or fail is decided atomically,
+  // so that the last renderer never leaves silently.
+  private void onRendererState(@NonNull Renderer renderer, @NonNull State state) {
+    final State sessionState;
+    synchronized (renderers) {
+      if (!renderers.contains(renderer)) {
+        return;
+      }
+      renderer.state = state;
+      if ((state == State.ERROR) || (state == State.STOPPED)) {
+        sessionState = ((renderers.size() > 1) && renderers.remove(renderer)) ? null : state;
+      } else {
+        sessionState = renderers.stream().anyMatch(r -> r.state == State.PLAYING) ? State.PLAYING :
+          renderers.stream().anyMatch(r -> r.state == State.BUFFERING) ? State.BUFFERING : state;
+      }
+    }
+    if (sessionState == null) {
+      Log.d(LOG_TAG, "onRendererState: " + state.name() + ", leaves session - " + renderer.getDisplayString());
+      detachStream(renderer.lockKey);
+      renderer.release();
+    } else {
+      onState(sessionState);
+    }
+  }
+
+  // Passthrough whenever all renderers declare upstream content, PCM only if needed:
+  // upstream is shared, so one mode for all.
+  // Nothing to negotiate if PCM is not allowed or if PCM streams are taken over.
+  private void negotiateMode() {
+    // Upstream content must be actually known
+    if ((mode == Mode.PCM) &&
+      isUpstreamProbed &&
+      (connectionSet != null) &&
+      renderers.stream().noneMatch(renderer -> renderer.isTakenOver)) {
+      final String content = connectionSet.getContent();
+      final String rendererMime = getRendererMime(content);
+      if (renderers.stream().allMatch(renderer -> renderer.canPlay(content, rendererMime))) {
+        setMode(Mode.MUTE);
+      }
+    }
+    Log.d(LOG_TAG, "negotiateMode: " + mode.name() + " for " + renderers.size() + " renderer(s)");
+  }
+
+  // No PCM stream is taken over and all renderers declare preloaded upstream content
+  private boolean canGroupPlayPreloaded() {
+    final Radio.ConnectionSet preloaded = getPreloaded(radio);
+    if ((preloaded == null) || renderers.stream().anyMatch(renderer -> renderer.isTakenOver)) {
+      return false;
+    }
+    final String content = preloaded.getContent();
+    final String rendererMime = getRendererMime(content);
+    return renderers.stream().allMatch(renderer -> renderer.canPlay(content, rendererMime));
+  }
+
+  // true if all renderer setups and capabilities are done or timed out
+  // (then default instanceId is used, capabilities are unknown)
+  private boolean awaitRendererSetup() {
+    final long deadlineMs = SystemClock.elapsedRealtime() + TimeUnit.SECONDS.toMillis(RENDERER_SETUP_TIMEOUT_S);
+    try {
+      for (final Renderer renderer : renderers) {
+        if (!renderer.rendererSetupLatch.await(getRemainingMs(deadlineMs), TimeUnit.MILLISECONDS)) {
+          Log.w(LOG_TAG, "awaitRendererSetup: timeout, default instanceId is used for " + renderer.getDisplayString());
+        }
+        if (!renderer.capabilitiesLatch.await(getRemainingMs(deadlineMs), TimeUnit.MILLISECONDS)) {
+          Log.w(LOG_TAG, "awaitRendererSetup: timeout, capabilities unknown for " + renderer.getDisplayString());
+        }
+      }
+      return true;
+    } catch (InterruptedException interruptedException) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  private static long getRemainingMs(long deadlineMs) {
+    return Math.max(0L, deadlineMs - SystemClock.elapsedRealtime());
+  }
+
+  // Per-stage timing, from session start
+  private void logStage(@NonNull String stage) {
+    Log.d(LOG_TAG, "Stage " + stage + " done in " + (SystemClock.elapsedRealtime() - startTimeMs) + " ms - " + lockKey);
+  }
+
+  // Relay of upstream content
+  @NonNull
+  private static String getDidlDlnaTail(@NonNull String content) {
+    return getRendererMime(content) + ":" + getDlnaTail(content);
+  }
+
+  @NonNull
+  private String getDidlDlnaTail() {
+    return (mode == Mode.PCM) ?
+      PCM_MIME + ":" + getDlnaTail(PCM_MIME) :
+      getDidlDlnaTail((connectionSet == null) ? Radio.DEFAULT_MIME : connectionSet.getContent());
+  }
+
+  // Creates DIDL-Lite metadata
+  @NonNull
+  private String getMetaData(
+    @NonNull Radio radio,
+    @NonNull Uri streamUri,
+    @NonNull Uri logoUri,
+    @NonNull String didlDlnaTail) {
+    return "<DIDL-Lite " +
+      "xmlns=\"urn:schemas-upnp-org:metadata-1-0/DIDL-Lite/\" " +
+      "xmlns:dc=\"http://purl.org/dc/elements/1.1/\" " +
+      "xmlns:upnp=\"urn:schemas-upnp-org:metadata-1-0/upnp/\">" +
+      "<item id=\"" + Request.escapeXml(radio.getId()) + "\" parentID=\"0\" restricted=\"1\">" +
+      "<upnp:class>object.item.audioItem.audioBroadcast</upnp:class>" +
+      "<dc:title>" + Request.escapeXml(radio.getName()) + "</dc:title>" +
+      "<upnp:artist>" + Request.escapeXml(information) + "</upnp:artist>" +
+      "<upnp:album>" + context.getString(R.string.live_streaming) + "</upnp:album>" +
+      "<upnp:albumArtURI>" + Request.escapeXml(logoUri.toString()) + "</upnp:albumArtURI>" +
+      "<res duration=\"0:00:00\" protocolInfo=\"" + PROTOCOL_INFO_HEADER + didlDlnaTail + "\">" + Request.escapeXml(streamUri.toString()) + "</res>" +
+      "</item>" +
+      "</DIDL-Lite>";
+  }
+
+  // UPnP pipeline of one renderer, with its own stream lockKey
+  private class Renderer {
+    @NonNull
+    private final Device device;
+    @NonNull
+    private final String lockKey;
+    @Nullable
+    private final Service connectionManager;
+    @Nullable
+    private final Service avTransportService;
+    @Nullable
+    private final Service renderingControl;
+    // Released when renderer setup (PrepareForConnection) is done, whatever the result
+    private final CountDownLatch rendererSetupLatch = new CountDownLatch(1);
+    // Released when renderer capabilities (GetProtocolInfo) are known, whatever the result
+    private final CountDownLatch capabilitiesLatch = new CountDownLatch(1);
+    private final List<EventController.Subscription> subscriptions = new ArrayList<>();
+    private final VolumeController volumeController = new VolumeController(this);
+    private final EventController.Listener eventListener = new EventController.Listener() {
+      @Override
+      public void onEvent(@NonNull Map<String, String> variables) {
+        Renderer.this.onEvent(variables);
+      }
+
+      @Override
+      public void onLost() {
+        Renderer.this.onEventsLost();
+      }
+    };
+    @NonNull
+    private volatile State state = State.IDLE;
+    // Set when renderer tells it actually plays
+    private volatile boolean isRendererPlaying = false;
+    @NonNull
+    private volatile String instanceId = "0";
+    // Stream is kept open from previous session
+    private final boolean isTakenOver;
+    // Previous session registered our radio as next transport URI
+    private final boolean isNext;
+    // Stream is kept open or renderer goes to next transport URI for next session
+    private volatile boolean isHandedOver = false;
+    // Stop is ours (pause, release), so STOPPED event is expected
+    private volatile boolean isStopRequested = false;
+    // Registered as next transport URI
+    @Nullable
+    private volatile Radio nextRadio = null;
+    @Nullable
+    private volatile String nextLockKey = null;
+
+    private Renderer(@NonNull Device device, @NonNull String lockKey) {
+      this.device = device;
+      this.lockKey = lockKey;
+      // Only devices with AVTransport are processed
+      avTransportService = device.getShortService(AV_TRANSPORT_SERVICE_ID);
+      // Those services are mandatory in UPnP standard
+      connectionManager = device.getShortService(CONNECTION_MANAGER_ID);
+      renderingControl = device.getShortService(RENDERING_CONTROL_ID);
+      isTakenOver = isNext = false;
+    }
+
+    // lockKey: current stream lockKey if taken over (same stream URL), else next one
+    private Renderer(@NonNull Renderer previousRenderer, @NonNull String lockKey, boolean isNext) {
+      device = previousRenderer.device;
+      this.lockKey = lockKey;
+      avTransportService = previousRenderer.avTransportService;
+      connectionManager = previousRenderer.connectionManager;
+      renderingControl = previousRenderer.renderingControl;
+      instanceId = previousRenderer.instanceId;
+      isRendererPlaying = previousRenderer.isRendererPlaying;
+      this.isNext = isNext;
+      isTakenOver = !isNext;
+    }
+
+    @NonNull
+    private String getDisplayString() {
+      return device.getDisplayString();
+    }
+
+    private boolean canPlay(@NonNull String content, @NonNull String rendererMime) {
+      final RendererCapabilities rendererCapabilities = RendererCapabilities.get(device);
+      return (rendererCapabilities != null) && rendererCapabilities.canPlay(content, rendererMime);
+    }
+
+    private void setup() {
+      subscribeEvents();
+      // Renderer is already set up
+      if (isTakenOver || isNext) {
+        releaseSetup();
+        return;
+      }
+      // Capabilities are cached per renderer, so only fetched once
+      if (RendererCapabilities.get(device) == null) {
+        scheduleActionGetProtocolInfo();
+      } else {
+        capabilitiesLatch.countDown();
+      }
+      scheduleActionPrepareForConnection();
+    }
+
+    private void scheduleStart() {
+      if (isTakenOver) {
+        // Renderer goes on playing, only source changes
+        logStage("stream taken over");
+        onRendererState(this, State.PLAYING);
+      } else if (isNext) {
+        scheduleActionNext();
+      } else {
+        scheduleActionSetAvTransportUri();
+        scheduleActionPlay();
+      }
+    }
+
+    private void release() {
+      // Wake up prepare() if still waiting for renderer
+      releaseSetup();
+      if (!isHandedOver) {
+        scheduleActionStop();
+      }
+      unsubscribeEvents();
+    }
+
+    private void logStage(@NonNull String stage) {
+      UpnpSessionDevice.this.logStage(stage + " on " + getDisplayString());
+    }
+
+    private void scheduleMandatoryAction(@Nullable Action action, @NonNull Function<Action, Request> function) {
+      if (action == null) {
+        // Shall not happen
+        Log.e(LOG_TAG, "scheduleMandatoryAction: mandatory UPnP action not found");
+        onRendererState(this, State.ERROR);
+        return;
+      }
+      function.apply(action).schedule();
+    }
+
+    private void scheduleOptionalAction(@Nullable Action action, @NonNull Function<Action, Request> function) {
+      if (action != null) {
+        function.apply(action).schedule();
+      }
+    }
+
+    private void scheduleActionGetProtocolInfo() {
+      final Action getProtocolInfo =
+        (connectionManager == null) ? null : connectionManager.getAction(ACTION_GET_PROTOCOL_INFO);
+      if (getProtocolInfo == null) {
+        // Nothing to wait for, capabilities are unknown
+        capabilitiesLatch.countDown();
+        return;
+      }
+      scheduleOptionalAction(
+        getProtocolInfo,
+        action -> new Request(action, requestController) {
+          @Override
+          protected void onSuccess() {
+            logStage(ACTION_GET_PROTOCOL_INFO);
+            final String sink = getResponse("Sink");
+            if (sink == null) {
+              Log.i(LOG_TAG, "ProtocolInfo: null");
+            } else {
+              final RendererCapabilities rendererCapabilities = new RendererCapabilities(sink);
+              Log.i(LOG_TAG, "ProtocolInfo: " + rendererCapabilities);
+              RendererCapabilities.put(device, rendererCapabilities);
             }
+            capabilitiesLatch.countDown();
+            super.onSuccess();
+          }
+
+          // Note: failure is not taken into account, capabilities are unknown
+          @Override
+          protected void onFailure() {
+            capabilitiesLatch.countDown();
+            super.onFailure();
+          }
+        });
+    }
+
+    private void scheduleActionPlay() {
+      isStopRequested = false;
+      scheduleMandatoryAction(
+        (avTransportService == null) ? null : avTransportService.getAction(ACTION_PLAY),
+        action -> new Request(action, requestController, instanceId) {
+          @Override
+          protected void onSuccess() {
+            logStage(ACTION_PLAY);
+            onRendererState(Renderer.this, State.PLAYING);
+            preloadNext();
+            super.onSuccess();
+          }
+
+          @Override
+          protected void onFailure() {
+            Log.d(LOG_TAG, "scheduleActionPlay: error");
+            onRendererState(Renderer.this, State.ERROR);
+            super.onFailure();
           }
-          super.onSuccess();
         }
-        // Note: failure is not taken into account
-      });
-  }
+          .addArgument("Speed", "1"));
+    }
+
+    // Registered next transport URI is already resolved and prepared
+    private void scheduleActionNext() {
+      scheduleMandatoryAction(
+        (avTransportService == null) ? null : avTransportService.getAction(ACTION_NEXT),
+        action -> new Request(action, requestController, instanceId) {
+          @Override
+          protected void onSuccess() {
+            logStage(ACTION_NEXT);
+            onRendererState(Renderer.this, State.PLAYING);
+            preloadNext();
+            super.onSuccess();
+          }
 
-  private void scheduleActionPlay() {
-    scheduleMandatoryAction(
-      (avTransportService == null) ? null : avTransportService.getAction(ACTION_PLAY),
-      action -> new Request(action, requestController, instanceId) {
+          // Regular start as fallback
+          @Override
+          protected void onFailure() {
+            Log.d(LOG_TAG, "scheduleActionNext: error, fallback to regular start");
+            scheduleActionSetAvTransportUri();
+            scheduleActionPlay();
+            super.onFailure();
+          }
+        });
+    }
+
+    // Next radio is registered as next transport URI, so that skip to next is a transport Next.
+    // Only for passthrough: PCM streams are kept open on station change.
+    private void preloadNext() {
+      final Radio next = upcomingRadio;
+      final Action action =
+        (avTransportService == null) ? null : avTransportService.getAction(ACTION_SET_NEXT_AV_TRANSPORT_URI);
+      if ((mode == Mode.PCM) ||
+        (next == null) ||
+        (action == null) ||
+        (avTransportService.getAction(ACTION_NEXT) == null) ||
+        (nextRadio != null)) {
+        return;
+      }
+      // Upstream probe is blocking
+      try {
+        executor.execute(() -> preloadNext(next, action));
+      } catch (RejectedExecutionException rejectedExecutionException) {
+        Log.d(LOG_TAG, "preloadNext: session is released");
+      }
+    }
+
+    private void preloadNext(@NonNull Radio next, @NonNull Action action) {
+      final Radio.ConnectionSet nextConnectionSet = preload(next);
+      if ((nextConnectionSet == null) || isReleased) {
+        return;
+      }
+      final String content = nextConnectionSet.getContent();
+      if (!canPlay(content, getRendererMime(content))) {
+        Log.d(LOG_TAG, "preloadNext: " + content + " not supported by " + getDisplayString());
+        return;
+      }
+      final String key = UUID.randomUUID().toString();
+      final Uri nextUri = getStreamUri(key);
+      new Request(action, requestController, instanceId) {
         @Override
         protected void onSuccess() {
-          onState(State.PLAYING);
+          logStage(ACTION_SET_NEXT_AV_TRANSPORT_URI);
+          // Renderer may probe next stream ahead
+          if (reserveStream(next, key)) {
+            nextLockKey = key;
+            nextRadio = next;
+          } else {
+            Log.d(LOG_TAG, "preloadNext: preload lapsed");
+          }
           super.onSuccess();
         }
 
+        // Note: failure is not taken into account, skip to next will be a regular start
         @Override
         protected void onFailure() {
-          Log.d(LOG_TAG, "scheduleActionPlay: error");
-          onState(State.ERROR);
+          Log.d(LOG_TAG, "preloadNext: error");
           super.onFailure();
         }
       }
-        .addArgument("Speed", "1"));
+        .addArgument("NextURI", nextUri.toString())
+        .addArgument("NextURIMetaData", getMetaData(next, nextUri, getLogoUri(key), getDidlDlnaTail(content)))
+        .schedule();
+    }
+
+    private void scheduleActionStop() {
+      isStopRequested = true;
+      scheduleMandatoryAction(
+        (avTransportService == null) ? null : avTransportService.getAction(ACTION_STOP),
+        action -> new Request(action, requestController, instanceId) {
+          @Override
+          protected void onFailure() {
+            Log.d(LOG_TAG, "scheduleActionStop: error");
+            onRendererState(Renderer.this, State.ERROR);
+            super.onFailure();
+          }
+        });
+    }
+
+    private void scheduleActionPrepareForConnection() {
+      final Action prepareForConnection =
+        (connectionManager == null) ? null : connectionManager.getAction(ACTION_PREPARE_FOR_CONNECTION);
+      if (prepareForConnection == null) {
+        // Nothing to wait for, default instanceId is used
+        rendererSetupLatch.countDown();
+        return;
+      }
+      scheduleOptionalAction(
+        prepareForConnection,
+        action -> new Request(action, requestController) {
+          @Override
+          protected void onSuccess() {
+            final String aVTransportID = getResponse("AVTransportID");
+            if (aVTransportID == null) {
+              Log.e(LOG_TAG, "Unable to find instanceId");
+            } else {
+              instanceId = aVTransportID;
+            }
+            onRendererSetupDone();
+            super.onSuccess();
+          }
+
+          // Note: failure is not taken into account, default instanceId is used
+          @Override
+          protected void onFailure() {
+            onRendererSetupDone();
+            super.onFailure();
+          }
+        }
+          .addArgument("RemoteProtocolInfo", PROTOCOL_INFO_HEADER + "*:" + PROTOCOL_INFO_TAIL)
+          .addArgument("PeerConnectionManager", "")
+          .addArgument("PeerConnectionID", "-1")
+          .addArgument("Direction", "Input"));
+    }
+
+    private void scheduleActionSetAvTransportUri() {
+      final Uri streamUri = getStreamUri(lockKey);
+      scheduleMandatoryAction(
+        (avTransportService == null) ? null : avTransportService.getAction(ACTION_SET_AV_TRANSPORT_URI),
+        action -> new Request(action, requestController, instanceId) {
+          @Override
+          protected void onSuccess() {
+            logStage(ACTION_SET_AV_TRANSPORT_URI);
+            onRendererState(Renderer.this, State.BUFFERING);
+            super.onSuccess();
+          }
+
+          @Override
+          protected void onFailure() {
+            Log.d(LOG_TAG, "scheduleActionSetAvTransportUri: error");
+            onRendererState(Renderer.this, State.ERROR);
+            // Release other UPnP actions on this device
+            requestController.release(action.getDevice());
+            super.onFailure();
+          }
+        }
+          .addArgument("CurrentURI", streamUri.toString())
+          .addArgument("CurrentURIMetaData", getMetaData(radio, streamUri, logoUri, getDidlDlnaTail())));
+    }
+
+    private void subscribeEvents() {
+      final String host = new NetworkProxy(context).getWifiIpAddress();
+      if (host == null) {
+        Log.d(LOG_TAG, "subscribeEvents: no local address, no events");
+        return;
+      }
+      synchronized (subscriptions) {
+        for (final Service service : new Service[]{avTransportService, renderingControl}) {
+          final EventController.Subscription subscription =
+            (service == null) ? null : eventController.subscribe(service, host, eventListener);
+          if (subscription != null) {
+            subscriptions.add(subscription);
+          }
+        }
+      }
+    }
+
+    private void unsubscribeEvents() {
+      synchronized (subscriptions) {
+        subscriptions.forEach(EventController.Subscription::cancel);
+        subscriptions.clear();
+      }
+    }
+
+    // On EventController listener thread
+    private void onEvent(@NonNull Map<String, String> variables) {
+      if (isReleased) {
+        return;
+      }
+      final String volume = variables.get(EVENT_VOLUME);
+      if (volume != null) {
+        try {
+          volumeController.onLevel(Integer.parseInt(volume), true);
+        } catch (NumberFormatException numberFormatException) {
+          Log.d(LOG_TAG, "onEvent: bad volume " + volume);
+        }
+      }
+      final String transportState = variables.get(EVENT_TRANSPORT_STATE);
+      if (transportState != null) {
+        onTransportState(transportState);
+      }
+    }
+
+    // On EventController worker thread; state is then only known from our own actions
+    private void onEventsLost() {
+      Log.w(LOG_TAG, "onEventsLost: no more events from " + getDisplayString());
+      volumeController.onEventsLost();
+    }
+
+    private void onTransportState(@NonNull String transportState) {
+      switch (transportState) {
+        case "PLAYING":
+          if (!isRendererPlaying) {
+            logStage("renderer playing");
+          }
+          isRendererPlaying = true;
+          onRendererState(this, State.PLAYING);
+          break;
+        case "TRANSITIONING":
+          onRendererState(this, State.BUFFERING);
+          break;
+        case "PAUSED_PLAYBACK":
+          // Paused from renderer side
+          if (isRendererPlaying) {
+            onRendererState(this, State.PAUSED);
+          }
+          break;
+        case "STOPPED":
+        case "NO_MEDIA_PRESENT":
+          // Initial state is STOPPED; also STOPPED after our own stop
+          if (isRendererPlaying && !isStopRequested) {
+            Log.d(LOG_TAG, "onTransportState: stopped by renderer " + getDisplayString());
+            onRendererState(this, State.STOPPED);
+          }
+          isRendererPlaying = false;
+          break;
+        default:
+          // Nothing to do
+      }
+    }
+
+    private void onRendererSetupDone() {
+      logStage(ACTION_PREPARE_FOR_CONNECTION);
+      rendererSetupLatch.countDown();
+    }
+
+    private void releaseSetup() {
+      rendererSetupLatch.countDown();
+      capabilitiesLatch.countDown();
+    }
   }
 
-  private void scheduleActionStop() {
-    scheduleMandatoryAction(
-      (avTransportService == null) ? null : avTransportService.getAction(ACTION_STOP),
-      action -> new Request(action, requestController, instanceId) {
-        @Override
-        protected void onFailure() {
-          Log.d(LOG_TAG, "scheduleActionStop: error");
-          onState(State.ERROR);
-          super.onFailure();
+  // Rooms are aligned on the latest renderer: others get PCM silence inserted in their stream.
+  // Renderer position is RelTime from GetPositionInfo; with second resolution, the tick edge
+  // is searched by back-to-back requests, so accuracy is about one request round trip.
+  // Passthrough streams can not be delayed, so only PCM is aligned.
+  private class LatencyAligner {
+    private static final long FIRST_ALIGNMENT_S = 10L; // Renderer buffers shall be settled
+    private static final long REALIGNMENT_S = 120L; // Renderer clocks drift
+    private static final long MEASURE_WINDOW_MS = 2500L; // Longer than a RelTime tick
+    private static final long TOLERANCE_MS = 30L;
+    private static final long MAX_DELAY_MS = 10000L; // Beyond, measure is not trusted
+    @Nullable
+    private ScheduledExecutorService scheduler = null;
+
+    public synchronized void start() {
+      if ((scheduler == null) && (renderers.size() > 1) && (mode == Mode.PCM)) {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        scheduler.scheduleWithFixedDelay(this::align, FIRST_ALIGNMENT_S, REALIGNMENT_S, TimeUnit.SECONDS);
+      }
+    }
+
+    public synchronized void release() {
+      if (scheduler != null) {
+        scheduler.shutdownNow();
+        scheduler = null;
+      }
+    }
+
+    // On scheduler thread
+    private void align() {
+      final Map<Renderer, Double> origins = new HashMap<>();
+      for (final Renderer renderer : renderers) {
+        final double origin = measureOrigin(renderer);
+        if (isReleased || Thread.currentThread().isInterrupted()) {
+          return;
+        }
+        if (!Double.isNaN(origin)) {
+          origins.put(renderer, origin);
+        }
+      }
+      if (origins.size() < 2) {
+        Log.d(LOG_TAG, "align: not enough renderer positions");
+        return;
+      }
+      final double latestOrigin = Collections.min(origins.values());
+      origins.forEach((renderer, origin) -> {
+        final long delayMs = Math.round((origin - latestOrigin) * 1000.0);
+        Log.d(LOG_TAG, "align: " + renderer.getDisplayString() + " is ahead by " + delayMs + " ms");
+        if ((delayMs > TOLERANCE_MS) && (delayMs <= MAX_DELAY_MS)) {
+          delayStream(renderer.lockKey, delayMs);
         }
       });
-  }
+    }
 
-  private void scheduleActionPrepareForConnection() {
-    scheduleOptionalAction(
-      (connectionManager == null) ? null : connectionManager.getAction(ACTION_PREPARE_FOR_CONNECTION),
-      action -> new Request(action, requestController) {
+    // Shared stream position (s) played by renderer at elapsed realtime 0, NaN if unknown.
+    // Constant as long as renderer plays at nominal rate.
+    private double measureOrigin(@NonNull Renderer renderer) {
+      final Action action =
+        (renderer.avTransportService == null) ? null : renderer.avTransportService.getAction(ACTION_GET_POSITION_INFO);
+      if (action == null) {
+        return Double.NaN;
+      }
+      final long endMs = SystemClock.elapsedRealtime() + MEASURE_WINDOW_MS;
+      double previousRelTime = Double.NaN;
+      double previousTimeS = Double.NaN;
+      while (!isReleased && (SystemClock.elapsedRealtime() < endMs)) {
+        final long sentMs = SystemClock.elapsedRealtime();
+        final double relTime = executeActionGetPositionInfo(action, renderer);
+        // Renderer position is taken at request middle
+        final double timeS = (sentMs + SystemClock.elapsedRealtime()) / 2000.0;
+        final double offsetS = getStreamOffsetS(renderer.lockKey);
+        if (Double.isNaN(relTime) || Double.isNaN(offsetS)) {
+          return Double.NaN;
+        }
+        // Fractional RelTime: position is known at once
+        if (relTime != Math.floor(relTime)) {
+          return offsetS + relTime - timeS;
+        }
+        // Tick happened between both requests
+        if (relTime > previousRelTime) {
+          return offsetS + relTime - (previousTimeS + timeS) / 2.0;
+        }
+        previousRelTime = relTime;
+        previousTimeS = timeS;
+      }
+      return Double.NaN;
+    }
+
+    // On calling thread; RelTime in s, NaN if unknown
+    private double executeActionGetPositionInfo(@NonNull Action action, @NonNull Renderer renderer) {
+      final double[] relTime = {Double.NaN};
+      new Request(action, requestController, renderer.instanceId) {
         @Override
         protected void onSuccess() {
-          final String aVTransportID = getResponse("AVTransportID");
-          if (aVTransportID == null) {
-            Log.e(LOG_TAG, "Unable to find instanceId");
-          } else {
-            instanceId = aVTransportID;
+          final String response = getResponse("RelTime");
+          if (response != null) {
+            relTime[0] = parseTime(response);
           }
-          super.onSuccess();
         }
-        // Note: failure is not taken into account
-      }
-        .addArgument("RemoteProtocolInfo", PROTOCOL_INFO_HEADER + "*:" + PROTOCOL_INFO_TAIL)
-        .addArgument("PeerConnectionManager", "")
-        .addArgument("PeerConnectionID", "-1")
-        .addArgument("Direction", "Input"));
-  }
 
-  // On calling thread
-  private void executeActionSetVolume() {
-    final Action action = (renderingControl == null) ? null : renderingControl.getAction(ACTION_SET_VOLUME);
-    if (action != null) {
-      Log.d(LOG_TAG, "Volume required: " + currentVolume);
-      new Request(action, requestController, instanceId) {
         @Override
-        protected void onSuccess() {
-          volumeDirection = AudioManager.ADJUST_SAME;
-          Log.d(LOG_TAG, "Volume set");
+        protected void onFailure() {
+          // No more action
+          Log.d(LOG_TAG, "executeActionGetPositionInfo: error");
         }
-        // Note: failure is not taken into account
       }
-        .addArgument(INPUT_CHANNEL, INPUT_MASTER)
-        .addArgument(INPUT_DESIRED_VOLUME, Integer.toString(currentVolume))
         .execute();
+      return relTime[0];
     }
   }
 
-  @Nullable
-  private Request getActionGetVolume() {
-    final Action action = (renderingControl == null) ? null : renderingControl.getAction(ACTION_GET_VOLUME);
-    return (action == null) ? null :
-      new Request(action, requestController, instanceId) {
+  // Volume presses are accumulated into a target, applied locally at once.
+  // At most one request is in flight; SetVolume always carries the latest target.
+  // Renderer level is refreshed from events, or by GetVolume at burst start if stale.
+  private class VolumeController {
+    private static final int MAX_VOLUME = 100; // Usual UPnP range
+    private static final long REFRESH_MS = 30000L; // GetVolume is done if older
+    @NonNull
+    private final Renderer renderer;
+    private int level = -1; // Renderer level, -1 if unknown
+    private int target = -1; // Required level, -1 if level unknown
+    private int pendingSteps = 0; // Presses while level is unknown
+    private long levelTimeMs = 0L;
+    private boolean isEvented = false;
+    private boolean isRunning = false;
+
+    private VolumeController(@NonNull Renderer renderer) {
+      this.renderer = renderer;
+    }
+
+    public synchronized void adjust(int direction) {
+      final int step =
+        (direction == AudioManager.ADJUST_RAISE) ? 1 : (direction == AudioManager.ADJUST_LOWER) ? -1 : 0;
+      if ((step == 0) || (renderer.renderingControl == null)) {
+        return;
+      }
+      // New burst: forget level if stale
+      if (!isRunning &&
+        !isEvented &&
+        (SystemClock.elapsedRealtime() - levelTimeMs > REFRESH_MS)) {
+        level = target = -1;
+      }
+      if (target < 0) {
+        pendingSteps += step;
+      } else {
+        target = clamp(target + step);
+      }
+      if (!isRunning) {
+        try {
+          executor.execute(this::run);
+          isRunning = true;
+        } catch (RejectedExecutionException rejectedExecutionException) {
+          Log.d(LOG_TAG, "adjust: session is released");
+        }
+      }
+    }
+
+    // Level is no longer known from events, so refreshed when stale
+    public synchronized void onEventsLost() {
+      isEvented = false;
+    }
+
+    // isEvent: level comes from renderer events
+    public synchronized void onLevel(int newLevel, boolean isEvent) {
+      level = clamp(newLevel);
+      levelTimeMs = SystemClock.elapsedRealtime();
+      isEvented = isEvented || isEvent;
+      if (target < 0) {
+        target = clamp(level + pendingSteps);
+        pendingSteps = 0;
+      } else if (!isRunning) {
+        // Nothing pending, renderer is the reference
+        target = level;
+      }
+    }
+
+    // Executor thread, runs until renderer level reaches target
+    private void run() {
+      // Level is needed first
+      if (isTargetUnknown()) {
+        executeActionGetVolume();
+      }
+      int desired;
+      while ((desired = getNextTarget()) >= 0) {
+        if (!executeActionSetVolume(desired)) {
+          onSetVolumeFailure();
+          return;
+        }
+      }
+    }
+
+    private synchronized boolean isTargetUnknown() {
+      return (target < 0);
+    }
+
+    // -1 if nothing more to do; run is then over, in the same step,
+    // so that a later press starts a new run
+    private synchronized int getNextTarget() {
+      if (isReleased || (target < 0) || (target == level)) {
+        isRunning = false;
+        pendingSteps = 0;
+        return -1;
+      }
+      return target;
+    }
+
+    // Go back to known renderer level
+    private synchronized void onSetVolumeFailure() {
+      isRunning = false;
+      pendingSteps = 0;
+      target = level;
+    }
+
+    private synchronized void onSetVolume(int newLevel) {
+      level = newLevel;
+      levelTimeMs = SystemClock.elapsedRealtime();
+    }
+
+    private int clamp(int volume) {
+      return Math.max(0, Math.min(MAX_VOLUME, volume));
+    }
+
+    // On calling thread
+    private void executeActionGetVolume() {
+      final Action action = (renderer.renderingControl == null) ? null : renderer.renderingControl.getAction(ACTION_GET_VOLUME);
+      if (action == null) {
+        Log.e(LOG_TAG, "executeActionGetVolume: GetVolume not found");
+        return;
+      }
+      new Request(action, requestController, renderer.instanceId) {
         @Override
         protected void onSuccess() {
           final String response = getResponse("CurrentVolume");
           if (response != null) {
             try {
-              currentVolume = Integer.parseInt(response);
-              switch (volumeDirection) {
-                case AudioManager.ADJUST_LOWER:
-                  currentVolume = Math.max(0, --currentVolume);
-                  executeActionSetVolume();
-                  break;
-                case AudioManager.ADJUST_RAISE:
-                  currentVolume++;
-                  executeActionSetVolume();
-                  break;
-                default:
-                  // Nothing to do
-              }
-            } catch (Exception exception) {
-              Log.e(LOG_TAG, "Unable to set volume", exception);
+              onLevel(Integer.parseInt(response), false);
+            } catch (NumberFormatException numberFormatException) {
+              Log.e(LOG_TAG, "Unable to get volume", numberFormatException);
             }
           }
         }
@@ -315,88 +1166,40 @@ public class UpnpSessionDevice extends RemoteSessionDevice {
         @Override
         protected void onFailure() {
           // No more action
-          volumeDirection = AudioManager.ADJUST_SAME;
+          Log.d(LOG_TAG, "executeActionGetVolume: error");
         }
       }
-        .addArgument(INPUT_CHANNEL, INPUT_MASTER);
-  }
+        .addArgument(INPUT_CHANNEL, INPUT_MASTER)
+        .execute();
+    }
 
-  private void scheduleActionSetAvTransportUri() {
-    scheduleMandatoryAction(
-      (avTransportService == null) ? null : avTransportService.getAction(ACTION_SET_AV_TRANSPORT_URI),
-      action -> new Request(action, requestController, instanceId) {
+    // On calling thread; true if done
+    private boolean executeActionSetVolume(int volume) {
+      final Action action = (renderer.renderingControl == null) ? null : renderer.renderingControl.getAction(ACTION_SET_VOLUME);
+      if (action == null) {
+        Log.e(LOG_TAG, "executeActionSetVolume: SetVolume not found");
+        return false;
+      }
+      final boolean[] isDone = {false};
+      Log.d(LOG_TAG, "Volume required: " + volume);
+      new Request(action, requestController, renderer.instanceId) {
         @Override
         protected void onSuccess() {
-          onState(State.BUFFERING);
-          super.onSuccess();
+          onSetVolume(volume);
+          isDone[0] = true;
+          Log.d(LOG_TAG, "Volume set");
         }
 
         @Override
         protected void onFailure() {
-          Log.d(LOG_TAG, "scheduleActionSetAvTransportUri: error");
-          onState(State.ERROR);
-          // Release other UPnP actions on this device
-          requestController.release(action.getDevice());
-          super.onFailure();
+          // No more action
+          Log.d(LOG_TAG, "executeActionSetVolume: error");
         }
       }
-        .addArgument("CurrentURI", radioUri.toString())
-        .addArgument("CurrentURIMetaData", getMetaData()));
-  }
-
-  @NonNull
-  private String getDidlDlnaTail() {
-    // Default is PCM
-    String content = PCM_MIME;
-    String mime = PCM_MIME;
-    if (mode != Mode.PCM) {
-      // Relay
-      content = (connectionSet == null) ? Radio.DEFAULT_MIME : connectionSet.getContent();
-      switch (content) {
-        case "audio/aac":
-        case "audio/x-aac":
-        case "audio/aacp":
-          // Renderers list audio/mp4, not raw AAC MIME types
-          mime = "audio/mp4";
-          break;
-        case "audio/x-mpeg":
-        case "audio/mp2":
-        case "audio/mpeg3":
-        case "audio/x-mp3":
-          // Normalize all MP3 variants
-          mime = "audio/mpeg";
-          break;
-        case "audio/x-m4a":
-          mime = "audio/mp4";
-          break;
-        case "audio/ogg":
-        case "audio/vorbis":
-        case "application/ogg":
-          // OGG: no standard DLNA MIME, best effort
-          mime = "audio/ogg";
-          break;
-        default:
-          mime = content;
-      }
+        .addArgument(INPUT_CHANNEL, INPUT_MASTER)
+        .addArgument(INPUT_DESIRED_VOLUME, Integer.toString(volume))
+        .execute();
+      return isDone[0];
     }
-    return mime + ":" + getDlnaTail(content);
-  }
-
-  // Creates DIDL-Lite metadata
-  @NonNull
-  private String getMetaData() {
-    return "<DIDL-Lite " +
-      "xmlns=\"urn:schemas-upnp-org:metadata-1-0/DIDL-Lite/\" " +
-      "xmlns:dc=\"http://purl.org/dc/elements/1.1/\" " +
-      "xmlns:upnp=\"urn:schemas-upnp-org:metadata-1-0/upnp/\">" +
-      "<item id=\"" + Request.escapeXml(radio.getId()) + "\" parentID=\"0\" restricted=\"1\">" +
-      "<upnp:class>object.item.audioItem.audioBroadcast</upnp:class>" +
-      "<dc:title>" + Request.escapeXml(radio.getName()) + "</dc:title>" +
-      "<upnp:artist>" + Request.escapeXml(information) + "</upnp:artist>" +
-      "<upnp:album>" + context.getString(R.string.live_streaming) + "</upnp:album>" +
-      "<upnp:albumArtURI>" + Request.escapeXml(logoUri.toString()) + "</upnp:albumArtURI>" +
-      "<res duration=\"0:00:00\" protocolInfo=\"" + PROTOCOL_INFO_HEADER + getDidlDlnaTail() + "\">" + Request.escapeXml(radioUri.toString()) + "</res>" +
-      "</item>" +
-      "</DIDL-Lite>";
   }
-}
\ No newline at end of file
+}
@@ -34,6 +34,7 @@ import java.util.Set;
 @SuppressWarnings("unused")
 public class Action extends Asset {
   public static final String XML_NAME = "action";
+  private static final String NAME = "name";
   private static final String LOG_TAG = Action.class.getSimpleName();
   @NonNull
   private final Service service;
@@ -55,25 +56,26 @@ public class Action extends Asset {
     }
   }
 
+  @Override
+  public void textAccept(@NonNull URLService uRLService, @NonNull String currentTag, @NonNull String text) {
+    final Argument argument = currentArgument;
+    if (argument == null) {
+      if (currentTag.equals(NAME)) {
+        name = text;
+      }
+    } else {
+      argument.textAccept(uRLService, currentTag, text);
+    }
+  }
+
   @Override
   public void endAccept(@NonNull URLService uRLService, @NonNull String currentTag) {
     final Argument argument = currentArgument;
     if (argument == null) {
-      // Process Action field
-      switch (currentTag) {
-        case XML_NAME:
-          if (name == null) {
-            setOnError();
-            Log.e(LOG_TAG, "endAccept: incomplete Action");
-          }
-          break;
-        case "name":
-          name = uRLService.getTag(currentTag);
-          // No more tags for Action
-          uRLService.clearTags();
-          break;
-        default:
-          // Nothing to do
+      // Action complete?
+      if (currentTag.equals(XML_NAME) && (name == null)) {
+        setOnError();
+        Log.e(LOG_TAG, "endAccept: incomplete Action");
       }
     } else {
       // Process Argument, if any
@@ -116,23 +118,32 @@ public class Action extends Asset {
 
   public static class Argument extends Asset {
     private static final String XML_NAME = "argument";
+    private static final String DIRECTION = "direction";
     private static final String LOG_TAG = Argument.class.getSimpleName();
     @Nullable
     private String name = null;
     @Nullable
     private String direction = null;
 
+    @Override
+    public void textAccept(@NonNull URLService uRLService, @NonNull String currentTag, @NonNull String text) {
+      switch (currentTag) {
+        case NAME:
+          name = text;
+          break;
+        case DIRECTION:
+          direction = text;
+          break;
+        default:
+          // Nothing to do
+      }
+    }
+
     @Override
     public void endAccept(@NonNull URLService uRLService, @NonNull String currentTag) {
-      if (currentTag.equals(XML_NAME)) {
-        name = uRLService.getTag("name");
-        direction = uRLService.getTag("direction");
-        if ((name == null) || (direction == null)) {
-          setOnError();
-          Log.e(LOG_TAG, "endAccept: incomplete Argument");
-        }
-        // No more tags for Argument
-        uRLService.clearTags();
+      if (currentTag.equals(XML_NAME) && ((name == null) || (direction == null))) {
+        setOnError();
+        Log.e(LOG_TAG, "endAccept: incomplete Argument");
       }
     }
 
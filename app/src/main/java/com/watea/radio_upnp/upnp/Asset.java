@@ -47,6 +47,6 @@ public abstract class Asset implements URLService.Consumer {
   }
 
   protected void hydrate(@NonNull URLService uRLService) throws IOException, XmlPullParserException {
-    uRLService.fetchContent().parseXml(this);
+    uRLService.parseXml(this);
   }
 }
\ No newline at end of file
@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2026. Stephane Treuchot
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to
+ * do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.watea.radio_upnp.upnp;
+
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Per device control timing, in the style of TCP RTO (RFC 6298).
+// Connect time estimates network RTT and sets connect deadline.
+// Each action has its own response time estimate, which sets read deadline.
+// Consecutive hard connect failures (refused, no route) mark device unreachable for a while:
+// queued requests then fail at once. A connect timeout only backs off, as a slow device
+// (e.g. Wi-Fi power save) is still alive.
+public class ControlTiming {
+  private static final int DEFAULT_TIMEOUT = 6000; // ms, when nothing is known
+  private static final int MIN_CONNECT_TIMEOUT = 1000; // ms, as RFC 6298 minimum RTO
+  private static final int MAX_CONNECT_TIMEOUT = 6000; // ms
+  private static final int MIN_READ_TIMEOUT = 1500; // ms, renderer processing included
+  private static final int MAX_READ_TIMEOUT = 12000; // ms
+  private static final int UNREACHABLE_FAILURES = 2; // Consecutive hard connect failures
+  private static final long UNREACHABLE_HOLD_MS = 2000L; // Then a new try is allowed
+  @NonNull
+  private final Estimator connectEstimator = new Estimator(MIN_CONNECT_TIMEOUT, MAX_CONNECT_TIMEOUT);
+  private final Map<String, Estimator> readEstimators = new HashMap<>();
+  private int connectFailures = 0;
+  private long unreachableUntilMs = 0L;
+
+  public synchronized int getConnectTimeout() {
+    return connectEstimator.getTimeout();
+  }
+
+  public synchronized int getReadTimeout(@NonNull String actionName) {
+    return getReadEstimator(actionName).getTimeout();
+  }
+
+  public synchronized boolean isUnreachable() {
+    return (SystemClock.elapsedRealtime() < unreachableUntilMs);
+  }
+
+  public synchronized void onConnect(long durationMs) {
+    connectFailures = 0;
+    unreachableUntilMs = 0L;
+    connectEstimator.onSample(durationMs);
+  }
+
+  public synchronized void onConnectTimeout() {
+    connectEstimator.onTimeout();
+  }
+
+  // Connection refused or no route to host
+  public synchronized void onConnectFailure() {
+    if (++connectFailures >= UNREACHABLE_FAILURES) {
+      unreachableUntilMs = SystemClock.elapsedRealtime() + UNREACHABLE_HOLD_MS;
+    }
+  }
+
+  public synchronized void onResponse(@NonNull String actionName, long durationMs) {
+    getReadEstimator(actionName).onSample(durationMs);
+  }
+
+  public synchronized void onResponseTimeout(@NonNull String actionName) {
+    getReadEstimator(actionName).onTimeout();
+  }
+
+  @NonNull
+  @Override
+  public synchronized String toString() {
+    return "connect: " + connectEstimator + ", failures: " + connectFailures;
+  }
+
+  @NonNull
+  private Estimator getReadEstimator(@NonNull String actionName) {
+    Estimator estimator = readEstimators.get(actionName);
+    if (estimator == null) {
+      estimator = new Estimator(MIN_READ_TIMEOUT, MAX_READ_TIMEOUT);
+      readEstimators.put(actionName, estimator);
+    }
+    return estimator;
+  }
+
+  // Not thread safe
+  private static class Estimator {
+    private static final int K = 4;
+    private final int minTimeout;
+    private final int maxTimeout;
+    private boolean hasSample = false;
+    private double srtt = 0; // ms
+    private double rttvar = 0; // ms
+    private int timeout = DEFAULT_TIMEOUT; // ms
+
+    private Estimator(int minTimeout, int maxTimeout) {
+      this.minTimeout = minTimeout;
+      this.maxTimeout = maxTimeout;
+    }
+
+    private int getTimeout() {
+      return timeout;
+    }
+
+    private void onSample(long durationMs) {
+      if (hasSample) {
+        rttvar = 0.75 * rttvar + 0.25 * Math.abs(srtt - durationMs);
+        srtt = 0.875 * srtt + 0.125 * durationMs;
+      } else {
+        hasSample = true;
+        srtt = durationMs;
+        rttvar = durationMs / 2.0;
+      }
+      timeout = clamp(srtt + K * rttvar);
+    }
+
+    // Back off
+    private void onTimeout() {
+      timeout = clamp(timeout * 2.0);
+    }
+
+    private int clamp(double value) {
+      return (int) Math.max(minTimeout, Math.min(maxTimeout, Math.round(value)));
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+      return "srtt " + Math.round(srtt) + " ms, timeout " + timeout + " ms";
+    }
+  }
+}
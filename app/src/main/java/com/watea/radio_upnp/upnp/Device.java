@@ -25,6 +25,7 @@ package com.watea.radio_upnp.upnp;
 
 import android.graphics.Bitmap;
 import android.util.Log;
+import android.util.LruCache;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -34,10 +35,17 @@ import com.watea.androidssdpclient.SsdpService;
 import org.xmlpull.v1.XmlPullParserException;
 
 import java.io.IOException;
+import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -85,6 +93,7 @@ import java.util.regex.Pattern;
 //    <presentationURL>URL for presentation</presentationURL>
 //  </device>
 public class Device extends Asset {
+  public static final int ICON_SIZE = 100; // px, display size
   private static final String LOG_TAG = Device.class.getSimpleName();
   private static final String XML_TAG = "device";
   private static final String DEVICE_LIST = "deviceList";
@@ -98,19 +107,41 @@ public class Device extends Asset {
   private static final String WIDTH = "width";
   private static final String HEIGHT = "height";
   private static final String URL = "url";
+  private static final String MIMETYPE = "mimetype";
+  private static final String PNG_MIME = "image/png";
+  private static final int ICONS_CACHE_SIZE = 1024 * 1024; // Bytes
+  // Scaled icons by URL, shared by all instances of a device; bounded, so that icons
+  // of devices gone for long are dropped
+  private static final LruCache<String, Bitmap> ICONS = new LruCache<String, Bitmap>(ICONS_CACHE_SIZE) {
+    @Override
+    protected int sizeOf(@NonNull String key, @NonNull Bitmap bitmap) {
+      return bitmap.getByteCount();
+    }
+  };
   private static final String UUID_PATTERN = "^(.*)::";
   private static final Pattern UUID_REGEX = Pattern.compile(UUID_PATTERN);
-  @NonNull
-  private final SsdpService ssdpService;
+  @Nullable
+  private final SsdpService ssdpService; // Null if not found by SSDP
   @Nullable
   private final Device superDevice;
-  private final Set<Service> services = new HashSet<>();
+  // By service id; frozen once hydrated
+  @NonNull
+  private Map<String, Service> services = new HashMap<>();
   private final Set<Device> embeddedDevices = new HashSet<>();
   @NonNull
   private final URL location;
+  private final boolean isRestored; // Built from cached contents, without network
+  @NonNull
+  private final ControlTiming controlTiming; // Shared with embedded devices
+  // Parsing state
+  private final List<ServiceDeclaration> serviceDeclarations = new ArrayList<>();
   @Nullable
   private volatile Device currentDevice = null;
   @Nullable
+  private ServiceDeclaration currentServiceDeclaration = null;
+  @Nullable
+  private IconDeclaration currentIconDeclaration = null;
+  @Nullable
   private String deviceType = null;
   @Nullable
   private String friendlyName = null;
@@ -124,20 +155,48 @@ public class Device extends Asset {
   private boolean isEmbeddedDevices = false;
   @Nullable
   private Bitmap icon = null;
+  // Best icon declared in description, fetched at end of parsing
+  @Nullable
+  private URI iconURI = null;
+  private int iconSize = 0;
   private boolean isPngIcon = false;
+  private volatile boolean isVerified;
 
   public Device(@NonNull SsdpService ssdpService) throws IOException, XmlPullParserException {
     this.ssdpService = ssdpService;
     this.superDevice = null;
     location = new URL(ssdpService.getLocation());
+    isRestored = false;
+    isVerified = true;
+    controlTiming = new ControlTiming();
     hydrate(new URLService(location));
   }
 
+  // Known device, not found by SSDP.
+  // isRestored: built from cached contents, so unverified, else unicast fetch.
+  // uUID is used if UDN is not defined in description.
+  public Device(
+    @NonNull URL location,
+    @NonNull String uUID,
+    boolean isRestored) throws IOException, XmlPullParserException {
+    this.ssdpService = null;
+    this.superDevice = null;
+    this.location = location;
+    this.uUID = uUID;
+    this.isRestored = isRestored;
+    isVerified = !isRestored;
+    controlTiming = new ControlTiming();
+    hydrate(new URLService(location).fromCache(isRestored));
+  }
+
   // Embedded device
   public Device(@NonNull Device device) {
     this.ssdpService = device.ssdpService;
     this.superDevice = device;
     this.location = device.location;
+    this.isRestored = device.isRestored;
+    this.isVerified = device.isVerified;
+    this.controlTiming = device.controlTiming;
   }
 
   @Nullable
@@ -163,6 +222,36 @@ public class Device extends Asset {
     isAlive = alive;
   }
 
+  @NonNull
+  public ControlTiming getControlTiming() {
+    return controlTiming;
+  }
+
+  public boolean isRestored() {
+    return isRestored;
+  }
+
+  // false if restored and not yet confirmed by network
+  public boolean isVerified() {
+    return isVerified;
+  }
+
+  @NonNull
+  public URL getLocation() {
+    return location;
+  }
+
+  // Description URLs of this device and its embedded devices, by URL string
+  // (no URL.equals(), which resolves hosts)
+  @NonNull
+  public Map<String, URL> getDescriptionURLs() {
+    final Map<String, URL> result = new HashMap<>();
+    result.put(location.toString(), location);
+    services.values().forEach(service -> putDescriptionURL(result, service));
+    embeddedDevices.forEach(device -> device.services.values().forEach(service -> putDescriptionURL(result, service)));
+    return result;
+  }
+
   public boolean isEmbeddedDevice() {
     return (superDevice != null);
   }
@@ -178,16 +267,13 @@ public class Device extends Asset {
   }
 
   @NonNull
-  public Set<Service> getServices() {
-    return services;
+  public Collection<Service> getServices() {
+    return services.values();
   }
 
   @Nullable
   public Service getService(@NonNull String serviceId) {
-    return services.stream()
-      .filter(service -> service.getServiceId().equals(serviceId))
-      .findAny()
-      .orElse(null);
+    return services.get(serviceId);
   }
 
   @Nullable
@@ -204,11 +290,49 @@ public class Device extends Asset {
       case XML_TAG:
         currentDevice = isEmbeddedDevices ? new Device(this) : this;
         break;
+      case Service.XML_TAG:
+        currentServiceDeclaration = new ServiceDeclaration(currentDevice);
+        break;
+      case ICON:
+        currentIconDeclaration = new IconDeclaration();
+        break;
       default:
         // Nothing to do
     }
   }
 
+  @Override
+  public void textAccept(@NonNull URLService urlService, @NonNull String currentTag, @NonNull String text) {
+    final Device device = currentDevice;
+    final ServiceDeclaration serviceDeclaration = currentServiceDeclaration;
+    final IconDeclaration iconDeclaration = currentIconDeclaration;
+    if (serviceDeclaration != null) {
+      serviceDeclaration.textAccept(currentTag, text);
+    } else if (iconDeclaration != null) {
+      iconDeclaration.textAccept(currentTag, text);
+    } else if (device != null) {
+      switch (currentTag) {
+        case DEVICE_TYPE:
+          device.deviceType = text;
+          break;
+        case FRIENDLY_NAME:
+          device.friendlyName = text;
+          break;
+        case MODEL_NAME:
+          device.modelName = text;
+          break;
+        case MODEL_NUMBER:
+          device.modelNumber = text;
+          break;
+        case UDN:
+          device.uUID = text;
+          break;
+        default:
+          // Nothing to do
+      }
+    }
+  }
+
   @Override
   public void endAccept(@NonNull URLService urlService, @NonNull String currentTag) {
     final Device device = currentDevice;
@@ -216,94 +340,21 @@ public class Device extends Asset {
       case DEVICE_LIST:
         isEmbeddedDevices = false;
         break;
-      case DEVICE_TYPE:
-        if (device != null) {
-          device.deviceType = urlService.getTag(DEVICE_TYPE);
-        }
-        break;
-      case FRIENDLY_NAME:
-        if (device != null) {
-          device.friendlyName = urlService.getTag(FRIENDLY_NAME);
-        }
-        break;
-      case MODEL_NAME:
-        if (device != null) {
-          device.modelName = urlService.getTag(MODEL_NAME);
-        }
-        break;
-      case MODEL_NUMBER:
-        if (device != null) {
-          device.modelNumber = urlService.getTag(MODEL_NUMBER);
-        }
-        break;
-      case UDN:
-        if (device != null) {
-          device.uUID = urlService.getTag(UDN);
-        }
-        break;
       case Service.XML_TAG:
-        final String serviceType = urlService.getTag(Service.SERVICE_TYPE);
-        final String serviceId = urlService.getTag(Service.SERVICE_ID);
-        final String descriptionURL = urlService.getTag(Service.SCPDURL);
-        final String controlURL = urlService.getTag(Service.CONTROL_URL);
-        // No more tags for Service
-        urlService.clearTags();
-        if ((device == null) ||
-          (serviceType == null) ||
-          (serviceId == null) ||
-          (descriptionURL == null) ||
-          (controlURL == null)) {
-          setOnError();
-          Log.e(LOG_TAG, "endAccept: incomplete service parameters");
-        } else {
-          final String log = "Add service: " + serviceType + " to " + getDisplayString();
-          try {
-            final Service service = new Service(
-              this,
-              urlService.getURL(),
-              serviceType,
-              serviceId,
-              new URI(descriptionURL),
-              new URI(controlURL));
-            if (service.isOnError()) {
-              setOnError();
-              Log.e(LOG_TAG, log + " failed");
-            } else {
-              device.services.add(service);
-              Log.d(LOG_TAG, log);
-            }
-          } catch (IOException | XmlPullParserException | URISyntaxException exception) {
-            setOnError();
-            Log.e(LOG_TAG, log + " failed", exception);
-          }
+        // Services are fetched once description stream is closed
+        final ServiceDeclaration serviceDeclaration = currentServiceDeclaration;
+        if (serviceDeclaration != null) {
+          serviceDeclarations.add(serviceDeclaration);
         }
+        currentServiceDeclaration = null;
         break;
       case ICON:
-        // Fetch icon if larger than existing one.
-        // PNG format is preferred.
-        final String stringWidth = urlService.getTag(WIDTH);
-        final String stringHeight = urlService.getTag(HEIGHT);
-        final String stringUrl = urlService.getTag(URL);
-        if ((stringWidth != null) && (stringHeight != null) && (stringUrl != null)) {
-          try {
-            final URI uRI = new URI(stringUrl);
-            final int width = Integer.parseInt(stringWidth);
-            final int height = Integer.parseInt(stringHeight);
-            final boolean isDefined = (icon != null);
-            final boolean isIconSmaller = isDefined && (icon.getWidth() <= width) && (icon.getHeight() <= height);
-            final boolean isPngUrlSignature = new URLService(location, uRI).isPngUrlSignature();
-            if (!isDefined || isIconSmaller && (isPngUrlSignature || !isPngIcon)) {
-              final Bitmap newIcon = new URLService(location, uRI).getBitmap();
-              if (newIcon != null) {
-                icon = newIcon;
-                isPngIcon = isPngUrlSignature;
-              }
-            }
-          } catch (IOException | URISyntaxException exception) {
-            // Note: ignore exception, setOnError() not called here
-            Log.e(LOG_TAG, "endAccept: fail to fetch icon", exception);
-          }
+        // Only choose here, from declared values; fetch is done once at end of parsing
+        final IconDeclaration iconDeclaration = currentIconDeclaration;
+        if (iconDeclaration != null) {
+          iconDeclaration.endAccept();
         }
+        currentIconDeclaration = null;
         break;
       case XML_TAG:
         // Embedded device?
@@ -318,13 +369,22 @@ public class Device extends Asset {
 
   @Override
   public void endParseAccept(@NonNull URLService uRLService) {
-    // Some device have no UUID (tag UDN) in XML, so we take it from SSDP response
-    uUID = (uUID == null) ? getUUID(ssdpService) : uUID;
-    // Alive?
-    isAlive = isAlive(ssdpService.getStatus());
+    serviceDeclarations.forEach(serviceDeclaration -> serviceDeclaration.addService(uRLService.getURL()));
+    serviceDeclarations.clear();
+    // Description is complete
+    freezeServices();
+    embeddedDevices.forEach(Device::freezeServices);
+    fetchIcon();
+    // Not found by SSDP: supposed alive
+    if (ssdpService != null) {
+      // Some device have no UUID (tag UDN) in XML, so we take it from SSDP response
+      uUID = (uUID == null) ? getUUID(ssdpService) : uUID;
+      // Alive?
+      isAlive = isAlive(ssdpService.getStatus());
+    }
   }
 
-  @NonNull
+  @Nullable
   public SsdpService getSsdpService() {
     return ssdpService;
   }
@@ -357,6 +417,60 @@ public class Device extends Asset {
     return icon;
   }
 
+  private void freezeServices() {
+    services = Collections.unmodifiableMap(services);
+  }
+
+  // PNG preferred (transparency), then smallest icon not smaller than display, else largest
+  private boolean isBetterIcon(int size, boolean isPng) {
+    if (iconURI == null) {
+      return true;
+    }
+    if (isPng != isPngIcon) {
+      return isPng;
+    }
+    final boolean isLargeEnough = (size >= ICON_SIZE);
+    if (isLargeEnough != (iconSize >= ICON_SIZE)) {
+      return isLargeEnough;
+    }
+    return isLargeEnough ? (size < iconSize) : (size > iconSize);
+  }
+
+  // No network for restored device; icon comes from cache or with verification
+  private void fetchIcon() {
+    if (iconURI == null) {
+      return;
+    }
+    try {
+      final URLService iconService = new URLService(location, iconURI);
+      final String key = iconService.getURL().toString();
+      icon = ICONS.get(key);
+      if ((icon == null) && !isRestored) {
+        icon = iconService.getScaledBitmap(ICON_SIZE);
+        if (icon == null) {
+          Log.d(LOG_TAG, "fetchIcon: unable to decode " + key);
+        } else {
+          ICONS.put(key, icon);
+          if (iconService.isPng() != isPngIcon) {
+            Log.d(LOG_TAG, "fetchIcon: mimetype does not match content for " + key);
+          }
+        }
+      }
+    } catch (IOException | URISyntaxException exception) {
+      // Note: ignore exception, setOnError() not called here
+      Log.e(LOG_TAG, "fetchIcon: fail to fetch icon", exception);
+    }
+  }
+
+  private void putDescriptionURL(@NonNull Map<String, URL> uRLs, @NonNull Service service) {
+    try {
+      final URL uRL = service.getActualDescriptionURL();
+      uRLs.put(uRL.toString(), uRL);
+    } catch (URISyntaxException | MalformedURLException exception) {
+      Log.e(LOG_TAG, "putDescriptionURL: bad URL for " + service.getServiceId(), exception);
+    }
+  }
+
   @Override
   public boolean equals(@Nullable Object obj) {
     if (this == obj) return true;
@@ -368,4 +482,127 @@ public class Device extends Asset {
   public int hashCode() {
     return (uUID == null) ? super.hashCode() : uUID.hashCode();
   }
-}
\ No newline at end of file
+
+  private class ServiceDeclaration {
+    @Nullable
+    private final Device device;
+    @Nullable
+    private String serviceType = null;
+    @Nullable
+    private String serviceId = null;
+    @Nullable
+    private String descriptionURL = null;
+    @Nullable
+    private String controlURL = null;
+    @Nullable
+    private String eventSubURL = null; // Optional, no eventing if not defined
+
+    private ServiceDeclaration(@Nullable Device device) {
+      this.device = device;
+    }
+
+    private void textAccept(@NonNull String currentTag, @NonNull String text) {
+      switch (currentTag) {
+        case Service.SERVICE_TYPE:
+          serviceType = text;
+          break;
+        case Service.SERVICE_ID:
+          serviceId = text;
+          break;
+        case Service.SCPDURL:
+          descriptionURL = text;
+          break;
+        case Service.CONTROL_URL:
+          controlURL = text;
+          break;
+        case Service.EVENT_SUB_URL:
+          eventSubURL = text;
+          break;
+        default:
+          // Nothing to do
+      }
+    }
+
+    private void addService(@NonNull URL baseURL) {
+      if ((device == null) ||
+        (serviceType == null) ||
+        (serviceId == null) ||
+        (descriptionURL == null) ||
+        (controlURL == null)) {
+        setOnError();
+        Log.e(LOG_TAG, "addService: incomplete service parameters");
+        return;
+      }
+      final String log = "Add service: " + serviceType + " to " + getDisplayString();
+      try {
+        final Service service = new Service(
+          Device.this,
+          baseURL,
+          serviceType,
+          serviceId,
+          new URI(descriptionURL),
+          new URI(controlURL),
+          (eventSubURL == null) || eventSubURL.isEmpty() ? null : new URI(eventSubURL));
+        if (service.isOnError()) {
+          setOnError();
+          Log.e(LOG_TAG, log + " failed");
+        } else {
+          // First declaration is kept
+          device.services.putIfAbsent(serviceId, service);
+          Log.d(LOG_TAG, log);
+        }
+      } catch (IOException | XmlPullParserException | URISyntaxException exception) {
+        setOnError();
+        Log.e(LOG_TAG, log + " failed", exception);
+      }
+    }
+  }
+
+  private class IconDeclaration {
+    @Nullable
+    private String width = null;
+    @Nullable
+    private String height = null;
+    @Nullable
+    private String url = null;
+    @Nullable
+    private String mimetype = null;
+
+    private void textAccept(@NonNull String currentTag, @NonNull String text) {
+      switch (currentTag) {
+        case WIDTH:
+          width = text.trim();
+          break;
+        case HEIGHT:
+          height = text.trim();
+          break;
+        case URL:
+          url = text.trim();
+          break;
+        case MIMETYPE:
+          mimetype = text.trim();
+          break;
+        default:
+          // Nothing to do
+      }
+    }
+
+    // Best icon is kept
+    private void endAccept() {
+      if ((width != null) && (height != null) && (url != null)) {
+        try {
+          final int size = Math.min(Integer.parseInt(width), Integer.parseInt(height));
+          final boolean isPng = PNG_MIME.equalsIgnoreCase(mimetype);
+          if (isBetterIcon(size, isPng)) {
+            iconURI = new URI(url);
+            iconSize = size;
+            isPngIcon = isPng;
+          }
+        } catch (NumberFormatException | URISyntaxException exception) {
+          // Note: ignore exception, setOnError() not called here
+          Log.e(LOG_TAG, "endAccept: bad icon declaration", exception);
+        }
+      }
+    }
+  }
+}
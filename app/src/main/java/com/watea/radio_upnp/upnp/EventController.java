@@ -0,0 +1,467 @@
+/*
+ * Copyright (c) 2026. Stephane Treuchot
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to
+ * do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.watea.radio_upnp.upnp;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Response;
+
+// UPnP GENA subscriber.
+// SUBSCRIBE, renewal and UNSUBSCRIBE run on a single worker thread.
+// A failed renewal falls back to a fresh SUBSCRIBE, retried with backoff.
+// NOTIFY requests are received on a lightweight callback listener; each subscription
+// has its own callback path, so early NOTIFY (sent before SUBSCRIBE response) is not lost.
+// LastChange (AVTransport, RenderingControl) is flattened to variable name => val.
+public class EventController {
+  private static final String LOG_TAG = EventController.class.getSimpleName();
+  private static final String CALLBACK_PATH = "/event/";
+  private static final String LAST_CHANGE = "LastChange";
+  private static final String VAL = "val";
+  private static final String CHANNEL = "channel";
+  private static final String MASTER = "Master";
+  private static final String SECOND = "Second-";
+  private static final int TIMEOUT = 6000; // ms, for request connection and read
+  private static final int SUBSCRIPTION_TIMEOUT_S = 300; // Requested duration
+  private static final int MIN_RENEWAL_S = 1; // Renewal shall come before expiry, however short
+  private static final int FIRST_RETRY_S = 5; // Then doubled at each failure
+  private static final int SOCKET_TIMEOUT = 3000; // ms, NOTIFY read
+  private static final int MAX_BODY_SIZE = 64 * 1024;
+  private static final OkHttpClient OK_HTTP_CLIENT = new OkHttpClient.Builder()
+    .connectTimeout(TIMEOUT, TimeUnit.MILLISECONDS)
+    .readTimeout(TIMEOUT, TimeUnit.MILLISECONDS)
+    .build();
+  // By callback path
+  private final Map<String, Subscription> subscriptions = new ConcurrentHashMap<>();
+  @Nullable
+  private ScheduledExecutorService worker = null;
+  @Nullable
+  private volatile ServerSocket serverSocket = null;
+
+  @Nullable
+  private static String getHeader(@NonNull Map<String, String> headers, @NonNull String name) {
+    return headers.get(name.toLowerCase(Locale.ROOT));
+  }
+
+  // Returns s; SUBSCRIPTION_TIMEOUT_S if unknown or infinite
+  private static int parseTimeout(@Nullable String timeout) {
+    if ((timeout != null) && timeout.startsWith(SECOND)) {
+      try {
+        return Integer.parseInt(timeout.substring(SECOND.length()).trim());
+      } catch (NumberFormatException numberFormatException) {
+        Log.d(LOG_TAG, "parseTimeout: bad timeout " + timeout);
+      }
+    }
+    return SUBSCRIPTION_TIMEOUT_S;
+  }
+
+  @NonNull
+  private static String readLine(@NonNull InputStream inputStream) throws IOException {
+    final ByteArrayOutputStream line = new ByteArrayOutputStream();
+    int b;
+    while (((b = inputStream.read()) >= 0) && (b != '\n')) {
+      if (b != '\r') {
+        line.write(b);
+      }
+    }
+    return line.toString(StandardCharsets.UTF_8.name());
+  }
+
+  // Per-thread reused parser
+  @NonNull
+  private static XmlPullParser getPullParser(@NonNull String content) throws XmlPullParserException {
+    final XmlPullParser xmlPullParser = URLService.getParser();
+    xmlPullParser.setInput(new StringReader(content));
+    return xmlPullParser;
+  }
+
+  // <e:propertyset><e:property><variable>value</variable></e:property>...</e:propertyset>
+  @NonNull
+  private static Map<String, String> parsePropertySet(@NonNull String content)
+    throws XmlPullParserException, IOException {
+    final Map<String, String> result = new HashMap<>();
+    // Parser is not reentrant: LastChange is parsed afterwards
+    final List<String> lastChanges = new ArrayList<>();
+    final XmlPullParser xmlPullParser = getPullParser(content);
+    String currentTag = null;
+    int eventType = xmlPullParser.getEventType();
+    while (eventType != XmlPullParser.END_DOCUMENT) {
+      switch (eventType = xmlPullParser.next()) {
+        case XmlPullParser.START_TAG:
+          currentTag = xmlPullParser.getName();
+          break;
+        case XmlPullParser.TEXT:
+          if (currentTag != null) {
+            final String text = xmlPullParser.getText();
+            if (currentTag.equals(LAST_CHANGE)) {
+              lastChanges.add(text);
+            } else {
+              result.put(currentTag, text);
+            }
+          }
+          break;
+        case XmlPullParser.END_TAG:
+          currentTag = null;
+          break;
+        default:
+          // Nothing to do
+      }
+    }
+    for (final String lastChange : lastChanges) {
+      result.putAll(parseLastChange(lastChange));
+    }
+    return result;
+  }
+
+  // <Event><InstanceID val="0"><TransportState val="PLAYING"/><Volume channel="Master" val="20"/></InstanceID></Event>
+  @NonNull
+  private static Map<String, String> parseLastChange(@NonNull String content)
+    throws XmlPullParserException, IOException {
+    final Map<String, String> result = new HashMap<>();
+    final XmlPullParser xmlPullParser = getPullParser(content);
+    int eventType = xmlPullParser.getEventType();
+    while (eventType != XmlPullParser.END_DOCUMENT) {
+      if ((eventType = xmlPullParser.next()) == XmlPullParser.START_TAG) {
+        final String value = xmlPullParser.getAttributeValue(null, VAL);
+        final String channel = xmlPullParser.getAttributeValue(null, CHANNEL);
+        // Only master channel is relevant
+        if ((value != null) && ((channel == null) || channel.equals(MASTER))) {
+          result.put(xmlPullParser.getName(), value);
+        }
+      }
+    }
+    return result;
+  }
+
+  public synchronized void start() {
+    if (serverSocket != null) {
+      return;
+    }
+    try {
+      serverSocket = new ServerSocket(0);
+    } catch (IOException iOException) {
+      Log.e(LOG_TAG, "start: unable to open callback socket", iOException);
+      return;
+    }
+    worker = Executors.newSingleThreadScheduledExecutor();
+    final Thread thread = new Thread(this::listen, "GenaListener");
+    thread.setDaemon(true);
+    thread.start();
+    Log.d(LOG_TAG, "start: listening on port " + serverSocket.getLocalPort());
+  }
+
+  public synchronized void stop() {
+    subscriptions.clear();
+    if (worker != null) {
+      worker.shutdownNow();
+      worker = null;
+    }
+    final ServerSocket socket = serverSocket;
+    serverSocket = null;
+    if (socket != null) {
+      try {
+        socket.close();
+      } catch (IOException iOException) {
+        Log.d(LOG_TAG, "stop: error closing callback socket", iOException);
+      }
+    }
+  }
+
+  // Asynchronous; returns null if service has no eventing or controller is not started.
+  // host: local IP address the renderer can reach.
+  @Nullable
+  public synchronized Subscription subscribe(
+    @NonNull Service service,
+    @NonNull String host,
+    @NonNull Listener listener) {
+    final ServerSocket socket = serverSocket;
+    final URI eventSubURI = service.getActualEventSubURI();
+    if ((socket == null) || (eventSubURI == null)) {
+      return null;
+    }
+    final String path = CALLBACK_PATH + UUID.randomUUID();
+    final String callback = "<http://" +
+      (host.contains(":") ? "[" + host + "]" : host) + ":" + socket.getLocalPort() + path + ">";
+    final Subscription subscription = new Subscription(service, eventSubURI, path, listener);
+    subscriptions.put(path, subscription);
+    return execute(() -> subscription.subscribe(callback)) ? subscription : null;
+  }
+
+  private synchronized boolean execute(@NonNull Runnable runnable) {
+    try {
+      if (worker != null) {
+        worker.execute(runnable);
+        return true;
+      }
+    } catch (RejectedExecutionException rejectedExecutionException) {
+      Log.d(LOG_TAG, "execute: worker is stopped");
+    }
+    return false;
+  }
+
+  @Nullable
+  private synchronized ScheduledFuture<?> schedule(@NonNull Runnable runnable, int delayS) {
+    try {
+      if (worker != null) {
+        return worker.schedule(runnable, delayS, TimeUnit.SECONDS);
+      }
+    } catch (RejectedExecutionException rejectedExecutionException) {
+      Log.d(LOG_TAG, "schedule: worker is stopped");
+    }
+    return null;
+  }
+
+  private void listen() {
+    ServerSocket socket;
+    while ((socket = serverSocket) != null) {
+      try (final Socket client = socket.accept()) {
+        client.setSoTimeout(SOCKET_TIMEOUT);
+        handleNotify(client.getInputStream(), client.getOutputStream());
+      } catch (IOException iOException) {
+        if (serverSocket != null) {
+          Log.d(LOG_TAG, "listen: " + iOException.getMessage());
+        }
+      }
+    }
+    Log.d(LOG_TAG, "listen: exit");
+  }
+
+  private void handleNotify(@NonNull InputStream inputStream, @NonNull OutputStream outputStream)
+    throws IOException {
+    // Request line: NOTIFY <path> HTTP/1.1
+    final String[] requestLine = readLine(inputStream).split(" ");
+    final Map<String, String> headers = new HashMap<>();
+    String line;
+    while (!(line = readLine(inputStream)).isEmpty()) {
+      final int index = line.indexOf(':');
+      if (index > 0) {
+        headers.put(line.substring(0, index).trim().toLowerCase(Locale.ROOT), line.substring(index + 1).trim());
+      }
+    }
+    final Subscription subscription =
+      (requestLine.length < 2) || !requestLine[0].equals("NOTIFY") ? null : subscriptions.get(requestLine[1]);
+    if (subscription == null) {
+      outputStream.write("HTTP/1.1 412 Precondition Failed\r\nContent-Length: 0\r\nConnection: close\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+      return;
+    }
+    // Body
+    final String contentLength = getHeader(headers, "Content-Length");
+    final ByteArrayOutputStream body = new ByteArrayOutputStream();
+    final byte[] buffer = new byte[4096];
+    int remaining = MAX_BODY_SIZE;
+    try {
+      remaining = (contentLength == null) ? MAX_BODY_SIZE : Math.min(MAX_BODY_SIZE, Integer.parseInt(contentLength));
+    } catch (NumberFormatException numberFormatException) {
+      Log.d(LOG_TAG, "handleNotify: bad Content-Length " + contentLength);
+    }
+    int n;
+    while ((remaining > 0) && ((n = inputStream.read(buffer, 0, Math.min(buffer.length, remaining))) >= 0)) {
+      body.write(buffer, 0, n);
+      remaining -= n;
+    }
+    outputStream.write("HTTP/1.1 200 OK\r\nContent-Length: 0\r\nConnection: close\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+    outputStream.flush();
+    try {
+      final Map<String, String> variables = parsePropertySet(body.toString(StandardCharsets.UTF_8.name()));
+      Log.d(LOG_TAG, "NOTIFY " + getHeader(headers, "SEQ") + " from " + subscription.service.getServiceId() + ": " + variables);
+      subscription.listener.onEvent(variables);
+    } catch (XmlPullParserException xmlPullParserException) {
+      Log.d(LOG_TAG, "handleNotify: bad event content", xmlPullParserException);
+    }
+  }
+
+  public interface Listener {
+    // Called on listener thread
+    void onEvent(@NonNull Map<String, String> variables);
+
+    // Called on worker thread, once per loss: no more events until subscription
+    // is recovered, which is retried in background
+    default void onLost() {
+    }
+  }
+
+  public class Subscription {
+    @NonNull
+    private final Service service;
+    @NonNull
+    private final URI eventSubURI;
+    @NonNull
+    private final String path;
+    @NonNull
+    private final Listener listener;
+    @Nullable
+    private volatile String sid = null;
+    @Nullable
+    private volatile ScheduledFuture<?> renewal = null;
+    private volatile boolean isCancelled = false;
+    // Worker thread only
+    @Nullable
+    private String callback = null;
+    private int retryS = FIRST_RETRY_S;
+    private boolean isLost = false;
+
+    private Subscription(
+      @NonNull Service service,
+      @NonNull URI eventSubURI,
+      @NonNull String path,
+      @NonNull Listener listener) {
+      this.service = service;
+      this.eventSubURI = eventSubURI;
+      this.path = path;
+      this.listener = listener;
+    }
+
+    // Asynchronous
+    public void cancel() {
+      isCancelled = true;
+      subscriptions.remove(path);
+      final ScheduledFuture<?> future = renewal;
+      if (future != null) {
+        future.cancel(false);
+      }
+      if (sid != null) {
+        execute(this::unsubscribe);
+      }
+    }
+
+    // On worker thread
+    private void subscribe(@NonNull String callback) {
+      this.callback = callback;
+      subscribe();
+    }
+
+    // On worker thread
+    private void subscribe() {
+      assert callback != null;
+      if (!send(new okhttp3.Request.Builder()
+        .header("CALLBACK", callback)
+        .header("NT", "upnp:event"))) {
+        onFailure();
+      }
+    }
+
+    // On worker thread.
+    // Renewal refused (e.g. renderer rebooted) or failed: fresh subscription.
+    private void renew() {
+      final String currentSid = sid;
+      if (!isCancelled && (currentSid != null) && !send(new okhttp3.Request.Builder().header("SID", currentSid))) {
+        sid = null;
+        subscribe();
+      }
+    }
+
+    // On worker thread; retried with backoff
+    private void onFailure() {
+      if (isCancelled) {
+        return;
+      }
+      if (!isLost) {
+        isLost = true;
+        listener.onLost();
+      }
+      Log.d(LOG_TAG, "SUBSCRIBE " + service.getServiceId() + " retried in " + retryS + " s");
+      renewal = schedule(this::subscribe, retryS);
+      retryS = Math.min(2 * retryS, SUBSCRIPTION_TIMEOUT_S);
+    }
+
+    // On worker thread
+    private void unsubscribe() {
+      final String currentSid = sid;
+      if (currentSid == null) {
+        return;
+      }
+      try (final Response response = OK_HTTP_CLIENT.newCall(new okhttp3.Request.Builder()
+        .url(eventSubURI.toString())
+        .method("UNSUBSCRIBE", null)
+        .header("SID", currentSid)
+        .build()).execute()) {
+        Log.d(LOG_TAG, "UNSUBSCRIBE " + service.getServiceId() + " => " + response.code());
+      } catch (IOException | IllegalArgumentException exception) {
+        Log.d(LOG_TAG, "unsubscribe: failed for " + service.getServiceId(), exception);
+      }
+    }
+
+    // Shared by subscribe and renew; schedules next renewal.
+    // Returns false on failure.
+    private boolean send(@NonNull okhttp3.Request.Builder builder) {
+      if (isCancelled) {
+        return true;
+      }
+      try (final Response response = OK_HTTP_CLIENT.newCall(builder
+        .url(eventSubURI.toString())
+        .method("SUBSCRIBE", null)
+        .header("TIMEOUT", SECOND + SUBSCRIPTION_TIMEOUT_S)
+        .build()).execute()) {
+        final String responseSid = response.header("SID");
+        if (!response.isSuccessful() || (responseSid == null)) {
+          Log.d(LOG_TAG, "SUBSCRIBE " + service.getServiceId() + " => " + response.code());
+          return false;
+        }
+        sid = responseSid;
+        retryS = FIRST_RETRY_S;
+        isLost = false;
+        final int timeoutS = parseTimeout(response.header("TIMEOUT"));
+        Log.d(LOG_TAG, "SUBSCRIBE " + service.getServiceId() + " => " + sid + " for " + timeoutS + " s");
+        // Renew at half period; backoff only applies to failures
+        renewal = schedule(this::renew, Math.max(MIN_RENEWAL_S, timeoutS / 2));
+        // Cancelled while subscribing
+        if (isCancelled) {
+          unsubscribe();
+        }
+        return true;
+      } catch (IOException | IllegalArgumentException exception) {
+        Log.d(LOG_TAG, "subscribe: failed for " + service.getServiceId(), exception);
+        return false;
+      }
+    }
+  }
+}
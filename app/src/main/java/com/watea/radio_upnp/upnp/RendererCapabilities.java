@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2026. Stephane Treuchot
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to
+ * do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.watea.radio_upnp.upnp;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Renderer Sink protocolInfo, as returned by ConnectionManager GetProtocolInfo.
+// Entries are comma separated: <protocol>:<network>:<contentFormat>:<additionalInfo>.
+// Only http-get entries are relevant here.
+public class RendererCapabilities {
+  private static final String HTTP_GET = "http-get";
+  private static final String WILDCARD = "*";
+  // Cache by device UDN; survives device re-discovery
+  private static final Map<String, RendererCapabilities> CACHE = new ConcurrentHashMap<>();
+  private final Set<String> mimeTypes = new HashSet<>();
+
+  public RendererCapabilities(@NonNull String sink) {
+    for (final String entry : sink.split(",")) {
+      final String[] fields = entry.trim().split(":", 4);
+      if ((fields.length == 4) && fields[0].equalsIgnoreCase(HTTP_GET)) {
+        final String mimeType = normalize(fields[2]);
+        // Wildcard says nothing reliable about actual decoders, so it is ignored
+        if (!mimeType.isEmpty() && !mimeType.equals(WILDCARD)) {
+          mimeTypes.add(mimeType);
+        }
+      }
+    }
+  }
+
+  @Nullable
+  public static RendererCapabilities get(@NonNull Device device) {
+    final String uUID = device.getUUID();
+    return (uUID == null) ? null : CACHE.get(uUID);
+  }
+
+  public static void put(@NonNull Device device, @NonNull RendererCapabilities rendererCapabilities) {
+    final String uUID = device.getUUID();
+    if (uUID != null) {
+      CACHE.put(uUID, rendererCapabilities);
+    }
+  }
+
+  // Drops parameters (e.g. "audio/L16;rate=44100") and case
+  @NonNull
+  private static String normalize(@NonNull String mimeType) {
+    final int index = mimeType.indexOf(';');
+    return ((index < 0) ? mimeType : mimeType.substring(0, index)).trim().toLowerCase(Locale.ROOT);
+  }
+
+  // true if one of the MIME types is declared by renderer
+  public boolean canPlay(@NonNull String... mimeTypes) {
+    for (final String mimeType : mimeTypes) {
+      if (this.mimeTypes.contains(normalize(mimeType))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @NonNull
+  @Override
+  public String toString() {
+    return mimeTypes.toString();
+  }
+}
@@ -23,6 +23,7 @@
 
 package com.watea.radio_upnp.upnp;
 
+import android.os.SystemClock;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
@@ -36,9 +37,10 @@ import org.w3c.dom.NodeList;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStreamWriter;
+import java.net.ConnectException;
 import java.net.HttpURLConnection;
-import java.net.MalformedURLException;
-import java.net.URISyntaxException;
+import java.net.NoRouteToHostException;
+import java.net.SocketTimeoutException;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
@@ -51,7 +53,6 @@ import javax.xml.parsers.DocumentBuilderFactory;
 
 public abstract class Request {
   private static final String LOG_TAG = Request.class.getSimpleName();
-  private static final int TIMEOUT = 6000; // ms, for request connection and read
   private static final String SOAP_ENVELOPE_NS = "http://schemas.xmlsoap.org/soap/envelope/";
   private static final DocumentBuilderFactory DOCUMENT_BUILDER_FACTORY;
 
@@ -116,11 +117,11 @@ public abstract class Request {
     Log.d(LOG_TAG, "execute: " + action.getName() + " on: " + action.getDevice().getDisplayString());
     final Service service = action.getService();
     final String name = action.getName();
-    final URL url;
-    try {
-      url = service.getActualControlURI().toURL();
-    } catch (MalformedURLException | URISyntaxException malformedURLException) {
-      Log.d(LOG_TAG, "execute: " + name + " => " + malformedURLException);
+    final URL url = service.getActualControlURL();
+    final ControlTiming controlTiming = action.getDevice().getControlTiming();
+    // Fail fast
+    if (controlTiming.isUnreachable()) {
+      Log.d(LOG_TAG, "execute: " + name + " => device unreachable");
       onFailure();
       return;
     }
@@ -129,8 +130,8 @@ public abstract class Request {
     try {
       Log.d(LOG_TAG, "execute: " + name + " URL => " + url.toString());
       httpURLConnection = (HttpURLConnection) url.openConnection();
-      httpURLConnection.setConnectTimeout(TIMEOUT);
-      httpURLConnection.setReadTimeout(TIMEOUT);
+      httpURLConnection.setConnectTimeout(controlTiming.getConnectTimeout());
+      httpURLConnection.setReadTimeout(controlTiming.getReadTimeout(name));
       httpURLConnection.setRequestMethod("POST");
       httpURLConnection.setRequestProperty("Content-Type", "text/xml; charset=\"utf-8\"");
       httpURLConnection.setRequestProperty("SOAPAction", "\"" + serviceType + "#" + name + "\"");
@@ -140,11 +141,29 @@ public abstract class Request {
       onFailure();
       return;
     }
+    long startMs = SystemClock.elapsedRealtime();
+    try {
+      httpURLConnection.connect();
+    } catch (IOException ioException) {
+      Log.d(LOG_TAG, "execute: " + name + " => " + ioException);
+      if (ioException instanceof SocketTimeoutException) {
+        controlTiming.onConnectTimeout();
+      } else if ((ioException instanceof ConnectException) || (ioException instanceof NoRouteToHostException)) {
+        controlTiming.onConnectFailure();
+      }
+      Log.d(LOG_TAG, "execute: " + controlTiming);
+      httpURLConnection.disconnect();
+      onFailure();
+      return;
+    }
+    controlTiming.onConnect(SystemClock.elapsedRealtime() - startMs);
+    startMs = SystemClock.elapsedRealtime();
     try (final OutputStreamWriter writer =
            new OutputStreamWriter(httpURLConnection.getOutputStream(), StandardCharsets.UTF_8)) {
       writer.write(getSoapBody(serviceType, name).toString());
       writer.flush();
       final int responseCode = httpURLConnection.getResponseCode();
+      controlTiming.onResponse(name, SystemClock.elapsedRealtime() - startMs);
       Log.d(LOG_TAG, "execute: response is " + responseCode);
       final boolean isFailure = (responseCode < 200) || (responseCode >= 300);
       final Document document;
@@ -200,6 +219,10 @@ public abstract class Request {
       Log.d(LOG_TAG, "execute: " + name + " => success");
       responses.putAll(responseMap);
       onSuccess();
+    } catch (SocketTimeoutException socketTimeoutException) {
+      Log.d(LOG_TAG, "execute: " + name + " => " + socketTimeoutException);
+      controlTiming.onResponseTimeout(name);
+      onFailure();
     } catch (IOException ioException) {
       Log.d(LOG_TAG, "execute: " + name + " => " + ioException);
       onFailure();
@@ -216,8 +239,9 @@ public abstract class Request {
     requestController.schedule(this);
   }
 
-  public boolean hasDevice(@NonNull Device device) {
-    return action.getDevice().equals(device);
+  @NonNull
+  public Device getDevice() {
+    return action.getDevice();
   }
 
   @Nullable
@@ -227,12 +251,12 @@ public abstract class Request {
 
   // Runs next by default
   protected void onSuccess() {
-    requestController.runNextRequest();
+    requestController.runNextRequest(action.getDevice());
   }
 
   // Runs next by default
   protected void onFailure() {
-    requestController.runNextRequest();
+    requestController.runNextRequest(action.getDevice());
   }
 
   @NonNull
@@ -26,22 +26,33 @@ package com.watea.radio_upnp.upnp;
 import androidx.annotation.NonNull;
 
 import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
 
+// One serial queue per device: devices are driven in parallel,
+// actions on a given device keep their order
 public class RequestController {
-  private final ArrayDeque<Request> requests = new ArrayDeque<>();
+  private final Map<Device, ArrayDeque<Request>> requests = new HashMap<>();
 
   public synchronized void release(@NonNull Device device) {
-    requests.removeIf(request -> request.hasDevice(device));
+    final ArrayDeque<Request> deviceRequests = requests.get(device);
+    if (deviceRequests != null) {
+      deviceRequests.clear();
+    }
   }
 
-  public void runNextRequest() {
+  public void runNextRequest(@NonNull Device device) {
     final Request next;
     synchronized (this) {
-      if (requests.isEmpty()) {
+      final ArrayDeque<Request> deviceRequests = requests.get(device);
+      if ((deviceRequests == null) || deviceRequests.isEmpty()) {
         return;
       }
-      requests.poll();
-      next = requests.peekFirst();
+      deviceRequests.poll();
+      next = deviceRequests.peekFirst();
+      if (next == null) {
+        requests.remove(device);
+      }
     }
     if (next != null) {
       next.execute();
@@ -51,12 +62,14 @@ public class RequestController {
   public void schedule(@NonNull Request request) {
     final boolean isFirst;
     synchronized (this) {
-      requests.add(request);
-      isFirst = (requests.size() == 1);
+      final ArrayDeque<Request> deviceRequests =
+        requests.computeIfAbsent(request.getDevice(), key -> new ArrayDeque<>());
+      deviceRequests.add(request);
+      isFirst = (deviceRequests.size() == 1);
     }
-    // First action? => Start new thread
+    // First action on this device? => Start new thread
     if (isFirst) {
       request.ownThreadExecute();
     }
   }
-}
\ No newline at end of file
+}
@@ -31,11 +31,14 @@ import androidx.annotation.Nullable;
 import org.xmlpull.v1.XmlPullParserException;
 
 import java.io.IOException;
+import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 
 @SuppressWarnings("unused")
 // <actionList>
@@ -58,6 +61,7 @@ public class Service extends Asset {
   public static final String SERVICE_ID = "serviceId";
   public static final String SCPDURL = "SCPDURL";
   public static final String CONTROL_URL = "controlURL";
+  public static final String EVENT_SUB_URL = "eventSubURL";
   private static final String LOG_TAG = Service.class.getSimpleName();
   @NonNull
   private final Device device;
@@ -71,7 +75,13 @@ public class Service extends Asset {
   private final URI controlURL;
   @NonNull
   private final URI descriptionURL;
-  private final Set<Action> actions = new HashSet<>();
+  @Nullable
+  private final URI eventSubURL;
+  @NonNull
+  private final URL actualControlURL; // Resolved once
+  // By name; frozen once hydrated
+  @NonNull
+  private Map<String, Action> actions = new HashMap<>();
   @Nullable
   private volatile Action currentAction = null;
 
@@ -82,7 +92,8 @@ public class Service extends Asset {
     @NonNull String serviceType,
     @NonNull String serviceId,
     @NonNull URI descriptionURL,
-    @NonNull URI controlURL)
+    @NonNull URI controlURL,
+    @Nullable URI eventSubURL)
     throws IOException, XmlPullParserException, URISyntaxException {
     this.device = device;
     this.baseURL = baseURL;
@@ -90,8 +101,11 @@ public class Service extends Asset {
     this.serviceId = serviceId;
     this.controlURL = controlURL;
     this.descriptionURL = descriptionURL;
+    this.eventSubURL = eventSubURL;
+    actualControlURL = baseURL.toURI().resolve(controlURL).toURL();
     // Fetch content
-    hydrate(new URLService(baseURL, this.descriptionURL));
+    hydrate(new URLService(baseURL, this.descriptionURL).fromCache(device.isRestored()));
+    actions = Collections.unmodifiableMap(actions);
   }
 
   @Override
@@ -106,6 +120,14 @@ public class Service extends Asset {
     }
   }
 
+  @Override
+  public void textAccept(@NonNull URLService urlService, @NonNull String currentTag, @NonNull String text) {
+    final Action action = currentAction;
+    if (action != null) {
+      action.textAccept(urlService, currentTag, text);
+    }
+  }
+
   @Override
   public void endAccept(@NonNull URLService urlService, @NonNull String currentTag) {
     // Process Action, if any
@@ -119,7 +141,8 @@ public class Service extends Asset {
           // No setOnError() here as we want to tolerate incomplete service
           Log.e(LOG_TAG, "enAccept: try to add an incomplete Action to: " + serviceType);
         } else {
-          actions.add(action);
+          // First declaration is kept
+          actions.putIfAbsent(action.getName(), action);
         }
         currentAction = null;
       }
@@ -157,17 +180,38 @@ public class Service extends Asset {
   }
 
   @NonNull
-  public URI getActualControlURI() throws URISyntaxException {
-    return baseURL.toURI().resolve(controlURL);
+  public URL getActualControlURL() {
+    return actualControlURL;
+  }
+
+  @NonNull
+  public URL getActualDescriptionURL() throws URISyntaxException, MalformedURLException {
+    return baseURL.toURI().resolve(descriptionURL).toURL();
+  }
+
+  @Nullable
+  public URI getEventSubURL() {
+    return eventSubURL;
+  }
+
+  // Null if no eventing
+  @Nullable
+  public URI getActualEventSubURI() {
+    try {
+      return (eventSubURL == null) ? null : baseURL.toURI().resolve(eventSubURL);
+    } catch (URISyntaxException uRISyntaxException) {
+      Log.e(LOG_TAG, "getActualEventSubURI: bad URL " + baseURL, uRISyntaxException);
+      return null;
+    }
   }
 
   @NonNull
-  public Set<Action> getActions() {
-    return actions;
+  public Collection<Action> getActions() {
+    return actions.values();
   }
 
   @Nullable
   public Action getAction(@NonNull String actionName) {
-    return actions.stream().filter(action -> action.hasName(actionName)).findFirst().orElse(null);
+    return actions.get(actionName);
   }
 }
\ No newline at end of file
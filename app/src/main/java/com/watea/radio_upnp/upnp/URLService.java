@@ -41,21 +41,59 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class URLService {
   private static final int CONNECT_TIMEOUT = 8000; // ms
   private static final int READ_TIMEOUT = 3000; // ms
   private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 0x50, 0x4E, 0x47, 0x0D, 0x0A, 0x1A, 0x0A};
+  // Persisted contents by URL, so that devices can be restored without network.
+  // Only held while restoring.
+  private static final Map<String, String> CONTENTS = new ConcurrentHashMap<>();
+  // Tag names of UPnP descriptions, by canonical and lower case names.
+  // Parsing is case insensitive for those.
+  private static final Map<String, String> VOCABULARY = new HashMap<>();
+  // Parsing is not reentrant: consumers do not parse while parsing
+  private static final ThreadLocal<XmlPullParser> PARSER = new ThreadLocal<XmlPullParser>() {
+    @Override
+    protected XmlPullParser initialValue() {
+      try {
+        final XmlPullParserFactory xmlPullParserFactory = XmlPullParserFactory.newInstance();
+        xmlPullParserFactory.setNamespaceAware(true);
+        return xmlPullParserFactory.newPullParser();
+      } catch (XmlPullParserException xmlPullParserException) {
+        throw new IllegalStateException("Unable to create XML parser", xmlPullParserException);
+      }
+    }
+  };
+
+  static {
+    for (final String tag : new String[]{
+      "root", "specVersion", "major", "minor", "URLBase",
+      "device", "deviceList", "deviceType", "friendlyName", "manufacturer", "manufacturerURL",
+      "modelDescription", "modelName", "modelNumber", "modelURL", "serialNumber", "UDN", "UPC",
+      "iconList", "icon", "mimetype", "width", "height", "depth", "url",
+      "serviceList", "service", "serviceType", "serviceId", "SCPDURL", "controlURL", "eventSubURL",
+      "presentationURL",
+      "scpd", "actionList", "action", "name", "argumentList", "argument", "direction",
+      "relatedStateVariable", "retval", "serviceStateTable", "stateVariable", "dataType",
+      "defaultValue", "allowedValueList", "allowedValue", "allowedValueRange", "minimum", "maximum", "step"}) {
+      final String internedTag = tag.intern();
+      VOCABULARY.put(internedTag, internedTag);
+      VOCABULARY.put(tag.toLowerCase(Locale.ROOT), internedTag);
+    }
+  }
+
   @NonNull
   private final URLConnection uRLConnection;
-  private final Map<String, String> tags = new HashMap<>();
-  @Nullable
-  private String content = null;
   private boolean streamConsumed = false; // Guards against double getInputStream() calls on the same URLConnection
+  private boolean isFromCache = false;
+  private boolean isPng = false; // Content has PNG signature, set by getScaledBitmap()
 
   public URLService(@NonNull URL uRL) throws IOException {
     uRLConnection = uRL.openConnection();
@@ -67,83 +105,138 @@ public class URLService {
     this(uRL.toURI().resolve(uRI).toURL());
   }
 
-  // Ignore case
-  @Nullable
-  public String getTag(@NonNull String key) {
-    return tags.get(key.toLowerCase(Locale.ROOT));
+  // Per-thread reused parser, namespace aware; parsing with it is not reentrant
+  @NonNull
+  static XmlPullParser getParser() {
+    final XmlPullParser result = PARSER.get();
+    assert result != null;
+    return result;
   }
 
-  public void clearTags() {
-    tags.clear();
+  // Canonical form of known tags; other tags are left as is
+  @NonNull
+  private static String intern(@NonNull String tag) {
+    final String result = VOCABULARY.get(tag);
+    return (result == null) ? VOCABULARY.getOrDefault(tag.toLowerCase(Locale.ROOT), tag) : result;
   }
 
-  public boolean isPngUrlSignature() throws IOException {
-    try (final InputStream inputStream = getInputStream()) {
-      final byte[] buffer = new byte[PNG_SIGNATURE.length];
-      if (inputStream.read(buffer) == PNG_SIGNATURE.length) {
-        return Arrays.equals(buffer, PNG_SIGNATURE);
-      }
-      return false;
+  // Raw content, for device persistence; not cached
+  @NonNull
+  public static String fetchContent(@NonNull URL uRL) throws IOException {
+    try (final InputStream inputStream = new URLService(uRL).getInputStream()) {
+      return IOUtils.toString(inputStream, StandardCharsets.UTF_8);
     }
   }
 
-  @Nullable
-  public Bitmap getBitmap() throws IOException {
-    try (final InputStream inputStream = getInputStream()) {
-      final BitmapFactory.Options options = new BitmapFactory.Options();
-      options.inPreferredConfig = Bitmap.Config.ARGB_8888; // Enable transparency
-      return BitmapFactory.decodeStream(inputStream, null, options);
-    }
+  public static void putCachedContents(@NonNull Map<String, String> contents) {
+    CONTENTS.putAll(contents);
+  }
+
+  // To be called once restore is over
+  public static void clearCachedContents() {
+    CONTENTS.clear();
   }
 
+  // If set, parseXml() does not use network
   @NonNull
-  public URLService fetchContent() throws IOException {
+  public URLService fromCache(boolean isFromCache) {
+    this.isFromCache = isFromCache;
+    return this;
+  }
+
+
+  // Valid after getScaledBitmap()
+  public boolean isPng() {
+    return isPng;
+  }
+
+  // Single fetch: PNG signature is sniffed from the same bytes.
+  // Decoding is downsampled from bounds, then bitmap is scaled to size x size.
+  @Nullable
+  public Bitmap getScaledBitmap(int size) throws IOException {
+    final byte[] bytes;
     try (final InputStream inputStream = getInputStream()) {
-      String encoding = uRLConnection.getContentEncoding();
-      encoding = (encoding == null) ? "UTF-8" : encoding;
-      content = IOUtils.toString(inputStream, encoding);
-      return this;
+      bytes = IOUtils.toByteArray(inputStream);
+    }
+    isPng = (bytes.length >= PNG_SIGNATURE.length) &&
+      Arrays.equals(Arrays.copyOf(bytes, PNG_SIGNATURE.length), PNG_SIGNATURE);
+    final BitmapFactory.Options options = new BitmapFactory.Options();
+    options.inJustDecodeBounds = true;
+    BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
+    if ((options.outWidth <= 0) || (options.outHeight <= 0)) {
+      return null;
+    }
+    // Largest power of 2 keeping both dimensions not smaller than size
+    int sampleSize = 1;
+    while ((options.outWidth / (sampleSize * 2) >= size) && (options.outHeight / (sampleSize * 2) >= size)) {
+      sampleSize *= 2;
     }
+    options.inJustDecodeBounds = false;
+    options.inSampleSize = sampleSize;
+    options.inPreferredConfig = Bitmap.Config.ARGB_8888; // Enable transparency
+    final Bitmap bitmap = BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
+    if ((bitmap == null) || ((bitmap.getWidth() == size) && (bitmap.getHeight() == size))) {
+      return bitmap;
+    }
+    final Bitmap result = Bitmap.createScaledBitmap(bitmap, size, size, true);
+    if (result != bitmap) {
+      bitmap.recycle();
+    }
+    return result;
   }
 
-  // Calls consumer on START_TAG, END_TAG.
-  // XML contents may be handled with getTag, clearTags.
-  // fetchContent() must be called before parseXml().
+  // Description is parsed straight from the stream, with a per-thread reused parser.
+  // Calls consumer on START_TAG, TEXT (first one after START_TAG), END_TAG;
+  // known tag names are given in their canonical form, interned.
+  // Stream is closed before endParseAccept().
   public void parseXml(@NonNull Consumer consumer) throws XmlPullParserException, IOException {
-    if (content == null) {
-      throw new IllegalStateException("fetchContent() must be called before parseXml()");
+    final String key = getURL().toString();
+    final XmlPullParser xmlPullParser = getParser();
+    if (isFromCache) {
+      final String content = CONTENTS.get(key);
+      if (content == null) {
+        throw new IOException("parseXml: no cached content for " + key);
+      }
+      xmlPullParser.setInput(new StringReader(content));
+      parse(xmlPullParser, consumer);
+    } else {
+      try (final InputStream inputStream = getInputStream()) {
+        // Encoding is detected by parser from XML declaration
+        xmlPullParser.setInput(inputStream, null);
+        parse(xmlPullParser, consumer);
+      }
     }
-    final XmlPullParserFactory xmlPullParserFactory = XmlPullParserFactory.newInstance();
-    xmlPullParserFactory.setNamespaceAware(true);
-    final XmlPullParser xmlPullParser = xmlPullParserFactory.newPullParser();
-    xmlPullParser.setInput(new StringReader(content));
+    consumer.endParseAccept(this);
+  }
+
+  @NonNull
+  public URL getURL() {
+    return uRLConnection.getURL();
+  }
+
+  private void parse(@NonNull XmlPullParser xmlPullParser, @NonNull Consumer consumer)
+    throws XmlPullParserException, IOException {
     int eventType = xmlPullParser.getEventType();
     String currentTag = null;
     while (eventType != XmlPullParser.END_DOCUMENT) {
       switch (eventType = xmlPullParser.next()) {
         case XmlPullParser.START_TAG:
-          consumer.startAccept(this, currentTag = xmlPullParser.getName());
+          consumer.startAccept(this, currentTag = intern(xmlPullParser.getName()));
           break;
         case XmlPullParser.TEXT:
           if (currentTag != null) {
-            tags.put(currentTag.toLowerCase(Locale.ROOT), xmlPullParser.getText());
+            consumer.textAccept(this, currentTag, xmlPullParser.getText());
             // Tag processed
             currentTag = null;
           }
           break;
         case XmlPullParser.END_TAG:
-          consumer.endAccept(this, xmlPullParser.getName());
+          consumer.endAccept(this, intern(xmlPullParser.getName()));
           break;
         default:
           // Nothing to do
       }
     }
-    consumer.endParseAccept(this);
-  }
-
-  @NonNull
-  public URL getURL() {
-    return uRLConnection.getURL();
   }
 
   @NonNull
@@ -162,6 +255,9 @@ public class URLService {
     default void startAccept(@NonNull URLService uRLService, @NonNull String currentTag) {
     }
 
+    default void textAccept(@NonNull URLService uRLService, @NonNull String currentTag, @NonNull String text) {
+    }
+
     default void endAccept(@NonNull URLService uRLService, @NonNull String currentTag) {
     }
   }